@@ -78,6 +78,38 @@ public class Options {
      */
     public static final String CHAIN_PATH = "chain_path";
 
+    /**
+     * (Integer) Number of files of each chain that are walked concurrently.
+     * The default value is 1 (sequential execution)
+     */
+    public static final String WORKERS = "workers";
+
+    /**
+     * (List&lt;String&gt;) Files to read instead of scanning the chain's reader
+     * path. The include and exclude rules are still applied
+     */
+    public static final String FILES = "files";
+
+    /**
+     * (String) File with the list of files (one per line) to read instead of
+     * scanning the chain's reader path. Use "-" to read the list from the
+     * standard input
+     */
+    public static final String FILE_LIST = "file_list";
+
+    /**
+     * (String) Git reference (commit, branch or tag) of the local repository.
+     * Only the files added or modified since it are read
+     */
+    public static final String SINCE = "since";
+
+    /**
+     * (List&lt;String&gt;) Files added or modified since the {@link #SINCE}
+     * reference, resolved once before running the chains. If some files have
+     * been also specified, only the changed ones are read
+     */
+    public static final String CHANGED_FILES = "changed_files";
+
 	/**
 	 * Stored options
 	 */
@@ -166,6 +198,21 @@ public class Options {
 	    this.options.put(CHAIN_PATH, path);
 	}
 
+	public void setWorkers(int workers) {
+		if (workers < 1) {
+			throw new IllegalArgumentException("The number of workers must be greater than 0");
+		}
+		this.options.put(WORKERS, Integer.valueOf(workers));
+	}
+
+	public int getWorkers() {
+		Object value = this.options.get(WORKERS);
+		if (value != null) {
+			return Integer.parseInt(value.toString());
+		}
+		return 1;
+	}
+
 	public void setVerbose(boolean verbose) {
 		this.options.put(VERBOSE, Boolean.valueOf(verbose));
 	}
@@ -244,6 +291,56 @@ public class Options {
 		return null;
 	}
 
+	@SuppressWarnings("unchecked")
+	public void setFiles(String... files) {
+		if (files != null) {
+			if (!this.options.containsKey(FILES)) {
+				this.options.put(FILES, new ArrayList<Object>());
+			}
+			List<Object> allFiles = (List<Object>) this.options.get(FILES);
+			allFiles.addAll(Arrays.asList(files));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public List<String> getFiles() {
+		if (options.containsKey(FILES)) {
+			return (List<String>) options.get(FILES);
+		}
+		return null;
+	}
+
+	public void setFileList(String fileList) {
+		if (fileList != null) {
+			options.put(FILE_LIST, fileList);
+		}
+	}
+
+	public String getFileList() {
+		return (String) options.get(FILE_LIST);
+	}
+
+	public void setSince(String since) {
+		if (since != null) {
+			options.put(SINCE, since);
+		}
+	}
+
+	public String getSince() {
+		return (String) options.get(SINCE);
+	}
+
+	public void setChangedFiles(List<String> changedFiles) {
+		if (changedFiles != null) {
+			options.put(CHANGED_FILES, changedFiles);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public List<String> getChangedFiles() {
+		return (List<String>) options.get(CHANGED_FILES);
+	}
+
 	@SuppressWarnings("unchecked")
 	public List<String> getIncludes() {
 		if (options.containsKey(INCLUDES)) {
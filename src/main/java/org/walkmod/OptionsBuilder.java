@@ -122,6 +122,62 @@ public class OptionsBuilder {
         return this;
     }
 
+	/**
+	 * Sets the workers option
+	 *
+	 * @param workers
+	 *            number of files of each chain that are walked concurrently
+	 * @return updated OptionBuilder instance
+	 *
+	 * @see Options#WORKERS
+	 */
+	public OptionsBuilder workers(int workers) {
+		options.setWorkers(workers);
+		return this;
+	}
+
+	/**
+	 * Sets the files option
+	 *
+	 * @param files
+	 *            files to read instead of scanning the reader path
+	 * @return updated OptionBuilder instance
+	 *
+	 * @see Options#FILES
+	 */
+	public OptionsBuilder files(String... files) {
+		options.setFiles(files);
+		return this;
+	}
+
+	/**
+	 * Sets the file list option
+	 *
+	 * @param fileList
+	 *            file with the files to read or "-" for the standard input
+	 * @return updated OptionBuilder instance
+	 *
+	 * @see Options#FILE_LIST
+	 */
+	public OptionsBuilder fileList(String fileList) {
+		options.setFileList(fileList);
+		return this;
+	}
+
+	/**
+	 * Sets the since option
+	 *
+	 * @param since
+	 *            git reference whose changes are processed
+	 * @return updated OptionBuilder instance
+	 *
+	 * @see Options#SINCE
+	 */
+	public OptionsBuilder since(String since) {
+		options.setSince(since);
+		return this;
+	}
+
 	/**
 	 * Sets the printErrors option
 	 *
@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.text.DateFormat;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.LinkedList;
@@ -45,6 +46,7 @@ import org.walkmod.conf.providers.ExecutionModeProvider;
 import org.walkmod.conf.providers.IvyConfigurationProvider;
 import org.walkmod.exceptions.InvalidConfigurationException;
 import org.walkmod.exceptions.WalkModException;
+import org.walkmod.util.GitChanges;
 import org.walkmod.writers.Summary;
 
 /**
@@ -247,6 +249,7 @@ public class WalkModFacade {
 
         userDir = new File(System.getProperty("user.dir")).getAbsolutePath();
         System.setProperty("user.dir", options.getExecutionDirectory().getAbsolutePath());
+        Options execOptions = restrictToChanges(options);
         Configuration config = null;
 
         if (cfg.exists()) {
@@ -261,7 +264,7 @@ public class WalkModFacade {
                     new ExecutionModeProvider(execMode));
         }
         try {
-            config.executeModuleChains(options, command, chains);
+            config.executeModuleChains(execOptions, command, chains);
         } catch (Exception e) {
             System.setProperty("user.dir", userDir);
             if (options.isVerbose()) {
@@ -281,12 +284,44 @@ public class WalkModFacade {
             }
         }
 
-        config.execute(userDir, options, chains);
+        config.execute(userDir, execOptions, chains);
         result.addAll(Summary.getInstance().getWrittenFiles());
         System.setProperty("user.dir", userDir);
 
     }
 
+    /**
+     * Resolves the files added or modified since the git reference of the since option.
+     * The readers only read these files and, if some files or a file list have been also
+     * specified, only the changed ones.
+     * 
+     * @return a copy of the options with the changed files or the same options if there is
+     *         no since option or the changes have been already resolved
+     */
+    private Options restrictToChanges(Options options) {
+        String since = options.getSince();
+        if (since == null || options.getChangedFiles() != null) {
+            return options;
+        }
+        List<File> changes;
+        try {
+            changes = GitChanges.since(options.getExecutionDirectory(), since);
+        } catch (IOException e) {
+            System.setProperty("user.dir", userDir);
+            throw new WalkModException("Unable to read the changes since " + since, e);
+        }
+        List<String> files = new ArrayList<String>(changes.size());
+        for (File change : changes) {
+            files.add(change.getAbsolutePath());
+        }
+        Options result = new Options(options.asMap());
+        result.setChangedFiles(files);
+        if (options.isVerbose()) {
+            log.info(files.size() + " files changed since " + since);
+        }
+        return result;
+    }
+
     /**
      * Applies a list of transformation chains without updating the source files.
      * 
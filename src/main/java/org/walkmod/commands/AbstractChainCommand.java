@@ -46,6 +46,18 @@ public class AbstractChainCommand {
     @Parameter(names = { "-p", "--path" }, description = "Overrides the reader and writer paths of the selected chains")
     private String path = null;
 
+    @Parameter(names = { "-w", "--workers" }, description = "Number of files of each chain that are processed concurrently")
+    private int workers = 1;
+
+    @Parameter(names = { "--files" }, description = "Files of the reader path to process instead of scanning it")
+    private ArrayList<String> files = null;
+
+    @Parameter(names = { "--file-list" }, description = "File with the files of the reader path to process instead of scanning it (- for stdin)")
+    private String fileList = null;
+
+    @Parameter(names = { "--since" }, description = "Git reference. Only the files added or modified since it are processed")
+    private String since = null;
+
     @DynamicParameter(names = "-D", description = "Dynamic parameters")
     private Map<String, String> dynamicParams = new HashMap<String, String>();
 
@@ -108,6 +120,38 @@ public class AbstractChainCommand {
         return path;
     }
 
+    public int getWorkers() {
+        return workers;
+    }
+
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    public ArrayList<String> getFiles() {
+        return files;
+    }
+
+    public void setFiles(ArrayList<String> files) {
+        this.files = files;
+    }
+
+    public String getFileList() {
+        return fileList;
+    }
+
+    public void setFileList(String fileList) {
+        this.fileList = fileList;
+    }
+
+    public String getSince() {
+        return since;
+    }
+
+    public void setSince(String since) {
+        this.since = since;
+    }
+
     public void setPath(String path) {
         this.path = path;
     }
@@ -126,13 +170,21 @@ public class AbstractChainCommand {
             excludes.toArray(excludesArray);
         }
 
+        String[] filesArray = null;
+        if (files != null && !files.isEmpty()) {
+            filesArray = new String[files.size()];
+            files.toArray(filesArray);
+        }
+
         offline = (offline == true);
         showException = showException != null && (showException == true);
         Map<String, Object> dynamicArgs = new HashMap<String, Object>();
         dynamicArgs.putAll(dynamicParams);
 
         return OptionsBuilder.options().verbose(true).offline(offline).printErrors(showException)
-                .includes(includesArray).excludes(excludesArray).dynamicArgs(dynamicArgs).path(path);
+                .includes(includesArray).excludes(excludesArray).dynamicArgs(dynamicArgs).path(path)
+                .workers(workers).files(filesArray).fileList(fileList)
+                .since(since);
         
      
 
@@ -56,12 +56,15 @@ import org.walkmod.conf.entities.InitializerConfig;
 import org.walkmod.conf.entities.MergePolicyConfig;
 import org.walkmod.conf.entities.PluginConfig;
 import org.walkmod.conf.entities.PropertyDefinition;
+import org.walkmod.conf.entities.ReaderConfig;
 import org.walkmod.conf.entities.ProviderConfig;
 import org.walkmod.conf.entities.TransformationConfig;
+import org.walkmod.conf.entities.WalkerConfig;
 import org.walkmod.exceptions.WalkModException;
 import org.walkmod.impl.DefaultChainAdapterFactory;
 import org.walkmod.merger.MergeEngine;
 import org.walkmod.merger.MergePolicy;
+import org.walkmod.walkers.AbstractWalker;
 import org.walkmod.walkers.VisitorMessage;
 import org.walkmod.writers.Summary;
 
@@ -601,6 +604,8 @@ public class ConfigurationImpl implements Configuration {
                         String[] excludes = options.getExcludes().toArray(new String[options.getExcludes().size()]);
                         tcfg.getReaderConfig().setExcludes(excludes);
                     }
+                    setWorkers(tcfg, options);
+                    setFiles(tcfg, options);
 
                     ChainAdapter ap = apf.createChainProxy(this, tcfg.getName());
 
@@ -686,13 +691,64 @@ public class ConfigurationImpl implements Configuration {
                 log.info("Final memory: " + (Runtime.getRuntime().freeMemory()) / 1048576 + " M/ "
                         + (Runtime.getRuntime().totalMemory() / 1048576) + " M");
                 log.info("Total modified files: " + num);
+                logWrittenFiles();
                 System.out.print("----------------------------------------");
                 System.out.println("----------------------------------------");
             }
         }
     }
 
+    private void setWorkers(ChainConfig cc, Options options) {
+        if (options.getWorkers() > 1) {
+            WalkerConfig wc = cc.getWalkerConfig();
+            if (wc.getWalker() instanceof AbstractWalker) {
+                ((AbstractWalker) wc.getWalker()).setWorkers(options.getWorkers());
+            } else {
+                Map<String, Object> params = wc.getParams();
+                if (params == null) {
+                    params = new LinkedHashMap<String, Object>();
+                    wc.setParams(params);
+                }
+                params.put("workers", options.getWorkers());
+            }
+        }
+    }
+
+    private void logWrittenFiles() {
+        Summary summary = Summary.getInstance();
+        if (!summary.getSkippedFiles().isEmpty()) {
+            log.info("Written files: " + summary.getWrittenFiles().size() + ", unchanged files (not written): "
+                    + summary.getSkippedFiles().size());
+        }
+    }
+
+    private void setFiles(ChainConfig cc, Options options) {
+        if (options.getFiles() != null || options.getFileList() != null || options.getChangedFiles() != null) {
+            ReaderConfig rc = cc.getReaderConfig();
+            Map<String, Object> params = rc.getParameters();
+            if (params == null) {
+                params = new LinkedHashMap<String, Object>();
+                rc.setParameters(params);
+            }
+            if (options.getFiles() != null) {
+                params.put("files", options.getFiles().toArray(new String[options.getFiles().size()]));
+            }
+            if (options.getFileList() != null) {
+                params.put("fileList", options.getFileList());
+            }
+            if (options.getChangedFiles() != null) {
+                params.put("changedFiles",
+                        options.getChangedFiles().toArray(new String[options.getChangedFiles().size()]));
+            }
+        }
+    }
+
     public void executeChain(String userDir, Options options, ChainAdapterFactory apf, String name) {
+        ChainConfig chain = getChainConfig(name);
+        if (chain != null) {
+            setWorkers(chain, options);
+            setFiles(chain, options);
+        }
         if (options.getIncludes() != null || options.getExcludes() != null) {
             Collection<ChainConfig> chains = getChainConfigs();
             if (chains != null) {
@@ -768,6 +824,7 @@ public class ConfigurationImpl implements Configuration {
                     if (ap.getWalkerAdapter().getWalker().reportChanges()) {
                         log.info("Total modified files: " + num);
                     }
+                    logWrittenFiles();
                     System.out.print("----------------------------------------");
                     System.out.println("----------------------------------------");
                 }
@@ -16,6 +16,8 @@
 
 package org.walkmod.impl;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -33,6 +35,9 @@ import org.walkmod.conf.entities.ReaderConfig;
 import org.walkmod.conf.entities.WalkerConfig;
 import org.walkmod.conf.entities.WriterConfig;
 import org.walkmod.exceptions.WalkModException;
+import org.walkmod.readers.DefaultFileReader;
+import org.walkmod.writers.AbstractFileWriter;
+import org.walkmod.writers.AsyncChainWriter;
 
 public class DefaultChainAdapter implements ChainAdapter {
 
@@ -123,6 +128,14 @@ public class DefaultChainAdapter implements ChainAdapter {
 			}
 		}
 		readerConfig.setModelReader(reader);
+		if (!(reader instanceof DefaultFileReader) && readerConfig.getParameters() != null) {
+			Map<String, Object> readerParams = readerConfig.getParameters();
+			if (readerParams.containsKey("files") || readerParams.containsKey("fileList")
+					|| readerParams.containsKey("changedFiles")) {
+				LOG.warn("The reader of the chain " + getName()
+						+ " does not support restricting the files to read, so all the files of its path are read");
+			}
+		}
 		reader.setPath(readerConfig.getPath());
 		reader.setExcludes(readerConfig.getExcludes());
 		reader.setIncludes(readerConfig.getIncludes());
@@ -156,14 +169,91 @@ public class DefaultChainAdapter implements ChainAdapter {
 		}
 		writerConfig.setModelWriter(writer);
 		writer.setPath(writerConfig.getPath());
-		setChainWriter(writer);
+		setChainWriter(decorate(writer, writerConfig.getParams()));
 		wa.prepare();
 		ai.init(this);
 	}
 
+	/**
+	 * Wraps the writer with an {@link AsyncChainWriter} if the
+	 * <code>async</code> writer parameter is enabled.
+	 */
+	private ChainWriter decorate(ChainWriter writer, Map<String, Object> writerParams) {
+		if (writerParams != null && "true".equals(String.valueOf(writerParams.get(AsyncChainWriter.ASYNC_PARAM)))) {
+			int capacity = AsyncChainWriter.DEFAULT_QUEUE_CAPACITY;
+			int threads = 1;
+			Object value = writerParams.get(AsyncChainWriter.QUEUE_CAPACITY_PARAM);
+			if (value != null) {
+				capacity = Integer.parseInt(value.toString().trim());
+			}
+			value = writerParams.get(AsyncChainWriter.THREADS_PARAM);
+			if (value != null) {
+				threads = Integer.parseInt(value.toString().trim());
+			}
+			return new AsyncChainWriter(writer, capacity, threads);
+		}
+		return writer;
+	}
+
 	@Override
 	public void execute() throws WalkModException {
-		ai.invoke();
+		boolean written = false;
+		try {
+			AbstractFileWriter fileWriter = getFileWriter();
+			if (fileWriter != null && fileWriter.isTransactional()) {
+				try {
+					fileWriter.recover();
+				} catch (IOException e) {
+					throw new WalkModException("Error recovering the interrupted transaction of the chain " + name, e);
+				}
+			}
+			ai.invoke();
+			try {
+				// barrier of the pending writes (e.g. asynchronous or transactional)
+				if (modelWriter instanceof AsyncChainWriter) {
+					modelWriter.close();
+				} else if (modelWriter != null) {
+					modelWriter.flush();
+				}
+			} catch (IOException e) {
+				throw new WalkModException("Error writing the results of the chain " + name, e);
+			}
+			written = true;
+		} finally {
+			if (modelWriter instanceof AsyncChainWriter) {
+				try {
+					((AsyncChainWriter) modelWriter).shutdown();
+				} catch (IOException e) {
+					LOG.warn("Error stopping the writer of the chain " + name, e);
+				}
+			}
+			AbstractFileWriter fileWriter = getFileWriter();
+			if (!written && fileWriter != null) {
+				fileWriter.rollback();
+			}
+			if (model instanceof Closeable) {
+				try {
+					((Closeable) model).close();
+				} catch (IOException e) {
+					LOG.warn("Error closing the resource of the chain " + name, e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the file writer of the chain, even if it is written asynchronously, or null
+	 * if it is not an {@link AbstractFileWriter}.
+	 */
+	private AbstractFileWriter getFileWriter() {
+		ChainWriter writer = modelWriter;
+		if (writer instanceof AsyncChainWriter) {
+			writer = ((AsyncChainWriter) writer).getWriter();
+		}
+		if (writer instanceof AbstractFileWriter) {
+			return (AbstractFileWriter) writer;
+		}
+		return null;
 	}
 
 	@Override
@@ -16,15 +16,48 @@
 package org.walkmod.readers;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.walkmod.ChainReader;
 import org.walkmod.Resource;
 import org.walkmod.util.FileResource;
+import org.walkmod.util.PrefetchingFileResource;
 
 public class DefaultFileReader extends ChainReader {
 
+	/**
+	 * File list value to read the files from the standard input
+	 */
+	public static final String STDIN = "-";
+
+	private static List<String> stdinFiles;
+
 	private String[] extensions;
 
+	private int parallelism = 1;
+
+	private boolean ordered = true;
+
+	private int prefetch = 0;
+
+	private long prefetchBufferSize = 16 * 1024 * 1024;
+
+	private long mappingThreshold = Long.MAX_VALUE;
+
+	private String[] files;
+
+	private String fileList;
+
+	private String[] changedFiles;
+
 	public String[] getExtensions() {
 		return extensions;
 	}
@@ -33,13 +66,178 @@ public class DefaultFileReader extends ChainReader {
 		this.extensions = extensions;
 	}
 
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	public boolean isOrdered() {
+		return ordered;
+	}
+
+	public void setOrdered(boolean ordered) {
+		this.ordered = ordered;
+	}
+
+	public int getPrefetch() {
+		return prefetch;
+	}
+
+	/**
+	 * Sets the number of files whose contents are read ahead. By default (0),
+	 * the files are not prefetched. The buffered contents are only used by the
+	 * walkers that read the files with <code>getBuffer</code> or
+	 * <code>getContent</code> of the resource; with the other walkers the files
+	 * are just read ahead into the cache of the operating system, so it is
+	 * only worth enabling it for slow file systems. In both cases, the end of
+	 * line of the files is detected while prefetching them, so the writers do
+	 * not read them again.
+	 */
+	public void setPrefetch(int prefetch) {
+		this.prefetch = prefetch;
+	}
+
+	public long getPrefetchBufferSize() {
+		return prefetchBufferSize;
+	}
+
+	public void setPrefetchBufferSize(long prefetchBufferSize) {
+		this.prefetchBufferSize = prefetchBufferSize;
+	}
+
+	public long getMappingThreshold() {
+		return mappingThreshold;
+	}
+
+	/**
+	 * Sets the size from which the files are memory mapped. By default, they
+	 * are never mapped, since the chains usually overwrite the files that they
+	 * read.
+	 */
+	public void setMappingThreshold(long mappingThreshold) {
+		this.mappingThreshold = mappingThreshold;
+	}
+
+	public String[] getFiles() {
+		return files;
+	}
+
+	/**
+	 * Sets the files to read instead of scanning the path. They are still
+	 * filtered by the extensions, the includes and the excludes.
+	 */
+	public void setFiles(String[] files) {
+		this.files = files;
+	}
+
+	public String getFileList() {
+		return fileList;
+	}
+
+	/**
+	 * Sets a file with the files to read (one per line) instead of scanning
+	 * the path. With {@link #STDIN}, the files are read from the standard
+	 * input.
+	 */
+	public void setFileList(String fileList) {
+		this.fileList = fileList;
+	}
+
+	public String[] getChangedFiles() {
+		return changedFiles;
+	}
+
+	/**
+	 * Sets the only files that can be read, e.g. the files changed since a
+	 * git reference. If the files or a file list are also set, only the files
+	 * of both are read. Otherwise, they are read instead of scanning the path.
+	 */
+	public void setChangedFiles(String[] changedFiles) {
+		this.changedFiles = changedFiles;
+	}
+
+	private Collection<File> resolveFiles() throws Exception {
+		if (files == null && fileList == null) {
+			return changedFiles != null ? toFiles(Arrays.asList(changedFiles)) : null;
+		}
+		List<String> names = new ArrayList<String>();
+		if (files != null) {
+			names.addAll(Arrays.asList(files));
+		}
+		if (STDIN.equals(fileList)) {
+			names.addAll(readStdinFiles());
+		} else if (fileList != null) {
+			names.addAll(FileUtils.readLines(new File(fileList), "UTF-8"));
+		}
+		Collection<File> result = toFiles(names);
+		if (changedFiles != null) {
+			Set<File> changed = new HashSet<File>();
+			for (File file : toFiles(Arrays.asList(changedFiles))) {
+				changed.add(canonicalFile(file));
+			}
+			Collection<File> selected = new ArrayList<File>(result.size());
+			for (File file : result) {
+				if (changed.contains(canonicalFile(file))) {
+					selected.add(file);
+				}
+			}
+			result = selected;
+		}
+		return result;
+	}
+
+	private static Collection<File> toFiles(Collection<String> names) {
+		Collection<File> result = new ArrayList<File>(names.size());
+		for (String name : names) {
+			name = name.trim();
+			if (name.length() > 0) {
+				result.add(new File(name));
+			}
+		}
+		return result;
+	}
+
+	private static File canonicalFile(File file) {
+		try {
+			return file.getCanonicalFile();
+		} catch (IOException e) {
+			return file.getAbsoluteFile();
+		}
+	}
+
+	/**
+	 * The standard input can be consumed once, so all the chains share the
+	 * files that have been read.
+	 */
+	private static synchronized List<String> readStdinFiles() throws Exception {
+		if (stdinFiles == null) {
+			stdinFiles = IOUtils.readLines(System.in, "UTF-8");
+		}
+		return stdinFiles;
+	}
+
 	@Override
 	public Resource<File> read() throws Exception {
-		FileResource resource = new FileResource();
+		FileResource resource;
+		if (prefetch > 0) {
+			PrefetchingFileResource prefetching = new PrefetchingFileResource();
+			prefetching.setPrefetch(prefetch);
+			prefetching.setBufferSize(prefetchBufferSize);
+			resource = prefetching;
+		} else {
+			resource = new FileResource();
+		}
 		resource.setPath(getPath());
 		resource.setExtensions(getExtensions());
 		resource.setExcludes(getExcludes());
 		resource.setIncludes(getIncludes());
+		resource.setParallelism(getParallelism());
+		resource.setOrdered(isOrdered());
+		resource.setMappingThreshold(getMappingThreshold());
+		resource.setFiles(resolveFiles());
 		return resource;
 	}
 }
@@ -0,0 +1,64 @@
+/* 
+  Copyright (C) 2013 Raquel Pau and Albert Coroleu.
+ 
+ Walkmod is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+ 
+ Walkmod is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser General Public License for more details.
+ 
+ You should have received a copy of the GNU Lesser General Public License
+ along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.readers;
+
+import org.walkmod.ChainReader;
+import org.walkmod.Resource;
+import org.walkmod.util.MemoryFile;
+import org.walkmod.util.MemoryFileSystem;
+import org.walkmod.util.MemoryResource;
+
+/**
+ * Reads the files of a directory (the reader path) of a
+ * {@link MemoryFileSystem}.
+ */
+public class MemoryReader extends ChainReader {
+
+	private String fileSystem = MemoryFileSystem.DEFAULT;
+
+	private String[] extensions;
+
+	public String getFileSystem() {
+		return fileSystem;
+	}
+
+	/**
+	 * Sets the name of the file system. By default,
+	 * {@link MemoryFileSystem#DEFAULT}.
+	 */
+	public void setFileSystem(String fileSystem) {
+		this.fileSystem = fileSystem;
+	}
+
+	public String[] getExtensions() {
+		return extensions;
+	}
+
+	public void setExtensions(String[] extensions) {
+		this.extensions = extensions;
+	}
+
+	@Override
+	public Resource<MemoryFile> read() throws Exception {
+		MemoryResource resource = new MemoryResource();
+		resource.setFileSystem(MemoryFileSystem.get(fileSystem));
+		resource.setPath(getPath());
+		resource.setExtensions(getExtensions());
+		resource.setIncludes(getIncludes());
+		resource.setExcludes(getExcludes());
+		return resource;
+	}
+}
@@ -0,0 +1,111 @@
+/* 
+  Copyright (C) 2013 Raquel Pau and Albert Coroleu.
+ 
+ Walkmod is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+ 
+ Walkmod is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser General Public License for more details.
+ 
+ You should have received a copy of the GNU Lesser General Public License
+ along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * A file of a zip or jar archive that is iterated by an
+ * {@link ArchiveResource}. Its contents are read from the archive on demand,
+ * so the archive is never extracted.
+ */
+public final class ArchiveEntry {
+
+	private final ArchiveResource resource;
+
+	private final String name;
+
+	private final long size;
+
+	ArchiveEntry(ArchiveResource resource, String name, long size) {
+		this.resource = resource;
+		this.name = name;
+		this.size = size;
+	}
+
+	public File getArchive() {
+		return resource.getFile();
+	}
+
+	/**
+	 * Returns the path of the entry inside the archive (e.g.
+	 * <code>org/walkmod/Options.java</code>).
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the uncompressed size of the entry or -1 if it is unknown.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the location of the entry with the jar URL notation, e.g.
+	 * <code>lib/walkmod-sources.jar!/org/walkmod/Options.java</code>.
+	 */
+	public String getLocation() {
+		return getArchive().getPath() + "!/" + name;
+	}
+
+	/**
+	 * Returns a file whose path is the location of the entry. It does not
+	 * exist, but it can be used as the original file of the visitor context,
+	 * so the patch writers reference the archive path.
+	 */
+	public File getLocationFile() {
+		return new File(getLocation());
+	}
+
+	public InputStream openStream() throws IOException {
+		return resource.openStream(this);
+	}
+
+	public Reader openReader(String encoding) throws IOException {
+		return new InputStreamReader(openStream(), encoding);
+	}
+
+	public byte[] getContent() throws IOException {
+		InputStream is = openStream();
+		try {
+			return IOUtils.toByteArray(is);
+		} finally {
+			is.close();
+		}
+	}
+
+	/**
+	 * Returns the contents to be parsed with
+	 * {@link org.walkmod.walkers.Parsers}.
+	 */
+	public ByteBuffer getBuffer() throws IOException {
+		return ByteBuffer.wrap(getContent());
+	}
+
+	@Override
+	public String toString() {
+		return getLocation();
+	}
+}
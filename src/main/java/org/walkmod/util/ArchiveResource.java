@@ -0,0 +1,232 @@
+/* 
+  Copyright (C) 2013 Raquel Pau and Albert Coroleu.
+ 
+ Walkmod is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+ 
+ Walkmod is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser General Public License for more details.
+ 
+ You should have received a copy of the GNU Lesser General Public License
+ along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.FilenameUtils;
+import org.walkmod.SizedResource;
+import org.walkmod.exceptions.WalkModException;
+
+/**
+ * Resource with the files of a zip or jar archive (e.g. a
+ * <code>-sources.jar</code>). The entries are enumerated from the central
+ * directory of the archive as they are iterated and their contents are
+ * streamed when they are read, so the archive is not extracted. The includes
+ * and excludes are evaluated against the entry paths as if the archive were
+ * a directory.
+ */
+public class ArchiveResource implements SizedResource<ArchiveEntry>, Closeable {
+
+	private static final Pattern SLASH = Pattern.compile("/");
+
+	private File file;
+
+	private String[] extensions;
+
+	private String[] includes;
+
+	private String[] excludes;
+
+	private ZipFile zipFile;
+
+	private final ConcurrentMap<String, ConcurrentMap<String, String>> namespaces = new ConcurrentHashMap<String, ConcurrentMap<String, String>>();
+
+	public File getFile() {
+		return file;
+	}
+
+	public void setFile(File file) throws IOException {
+		this.file = file.getCanonicalFile();
+	}
+
+	public void setPath(String path) throws IOException {
+		setFile(new File(path));
+	}
+
+	public String[] getExtensions() {
+		return extensions;
+	}
+
+	public void setExtensions(String[] extensions) {
+		this.extensions = extensions;
+	}
+
+	public String[] getIncludes() {
+		return includes;
+	}
+
+	public void setIncludes(String[] includes) {
+		this.includes = includes;
+	}
+
+	public String[] getExcludes() {
+		return excludes;
+	}
+
+	public void setExcludes(String[] excludes) {
+		this.excludes = excludes;
+	}
+
+	/**
+	 * Returns the opened archive. It is opened again if it has been closed.
+	 */
+	private synchronized ZipFile getZipFile() throws IOException {
+		if (zipFile == null) {
+			zipFile = new ZipFile(file);
+		}
+		return zipFile;
+	}
+
+	InputStream openStream(ArchiveEntry entry) throws IOException {
+		ZipFile zip = getZipFile();
+		ZipEntry zipEntry = zip.getEntry(entry.getName());
+		if (zipEntry == null) {
+			throw new IOException(entry.getLocation() + " does not exist");
+		}
+		return zip.getInputStream(zipEntry);
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (zipFile != null) {
+			try {
+				zipFile.close();
+			} finally {
+				zipFile = null;
+			}
+		}
+	}
+
+	private boolean isAccepted(FileMatcher matcher, String root, String name) {
+		if (extensions != null) {
+			boolean found = false;
+			for (int i = 0; i < extensions.length && !found; i++) {
+				found = name.endsWith("." + extensions[i]);
+			}
+			if (!found) {
+				return false;
+			}
+		}
+		int index = name.indexOf('/');
+		while (index != -1) {
+			if (!matcher.accept(root + "/" + name.substring(0, index))) {
+				return false;
+			}
+			index = name.indexOf('/', index + 1);
+		}
+		return extensions != null || matcher.accept(root + "/" + name);
+	}
+
+	@Override
+	public Iterator<ArchiveEntry> iterator() {
+		final ZipFile zip;
+		try {
+			zip = getZipFile();
+		} catch (IOException e) {
+			throw new WalkModException("Error opening " + file.getPath(), e);
+		}
+		final FileMatcher matcher = FileMatcher.compile(file, includes, excludes);
+		final String root = FilenameUtils.normalize(file.getAbsolutePath(), true);
+		final Enumeration<? extends ZipEntry> entries = zip.entries();
+		return new Iterator<ArchiveEntry>() {
+
+			private ArchiveEntry next;
+
+			@Override
+			public boolean hasNext() {
+				while (next == null && entries.hasMoreElements()) {
+					ZipEntry entry = entries.nextElement();
+					if (!entry.isDirectory() && isAccepted(matcher, root, entry.getName())) {
+						next = new ArchiveEntry(ArchiveResource.this, entry.getName(), entry.getSize());
+					}
+				}
+				return next != null;
+			}
+
+			@Override
+			public ArchiveEntry next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				ArchiveEntry result = next;
+				next = null;
+				return result;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Returns the directory of the entry inside the archive with the given
+	 * separator, e.g. <code>org.walkmod</code> for
+	 * <code>org/walkmod/Options.java</code> and <code>"."</code>.
+	 */
+	@Override
+	public String getNearestNamespace(Object element, String regexSeparator) {
+		if (element instanceof ArchiveEntry) {
+			return getNamespace(((ArchiveEntry) element).getName(), regexSeparator);
+		}
+		throw new IllegalArgumentException();
+	}
+
+	@Override
+	public String getOwnerNamespace(Object element, String regexSeparator) {
+		return getNearestNamespace(element, regexSeparator);
+	}
+
+	private String getNamespace(String name, String regexSeparator) {
+		int index = name.lastIndexOf('/');
+		String dir = index == -1 ? "" : name.substring(0, index);
+		ConcurrentMap<String, String> cache = namespaces.get(regexSeparator);
+		if (cache == null) {
+			cache = new ConcurrentHashMap<String, String>();
+			ConcurrentMap<String, String> previous = namespaces.putIfAbsent(regexSeparator, cache);
+			if (previous != null) {
+				cache = previous;
+			}
+		}
+		String namespace = cache.get(dir);
+		if (namespace == null) {
+			namespace = SLASH.matcher(dir).replaceAll(regexSeparator);
+			cache.putIfAbsent(dir, namespace);
+		}
+		return namespace;
+	}
+
+	@Override
+	public long getSize(Object element) {
+		if (element instanceof ArchiveEntry) {
+			return Math.max(((ArchiveEntry) element).getSize(), 0);
+		}
+		throw new IllegalArgumentException();
+	}
+}
@@ -0,0 +1,94 @@
+/* 
+  Copyright (C) 2013 Raquel Pau and Albert Coroleu.
+ 
+ Walkmod is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+ 
+ Walkmod is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser General Public License for more details.
+ 
+ You should have received a copy of the GNU Lesser General Public License
+ along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Reader that decodes the characters of a byte buffer as they are read. Only
+ * the characters requested by each read are decoded, so a memory mapped file
+ * can be read without holding its contents in the heap. As with
+ * {@link String#String(byte[], Charset)}, malformed input is replaced.
+ */
+public class ByteBufferReader extends Reader {
+
+	private final ByteBuffer bytes;
+
+	private final CharsetDecoder decoder;
+
+	private final CharBuffer pending = CharBuffer.allocate(2);
+
+	private boolean decoded = false;
+
+	private boolean flushed = false;
+
+	public ByteBufferReader(ByteBuffer bytes, Charset charset) {
+		this.bytes = bytes.duplicate();
+		this.pending.flip();
+		this.decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	@Override
+	public int read(char[] cbuf, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (pending.hasRemaining()) {
+			int read = Math.min(len, pending.remaining());
+			pending.get(cbuf, off, read);
+			return read;
+		}
+		if (flushed) {
+			return -1;
+		}
+		CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+		decode(out);
+		int read = out.position() - off;
+		if (read == 0 && !flushed) {
+			// the next character does not fit (e.g. a surrogate pair in a single char)
+			pending.clear();
+			decode(pending);
+			pending.flip();
+			return read(cbuf, off, len);
+		}
+		return read == 0 ? -1 : read;
+	}
+
+	private void decode(CharBuffer out) throws IOException {
+		if (!decoded) {
+			CoderResult result = decoder.decode(bytes, out, true);
+			if (result.isError()) {
+				result.throwException();
+			}
+			decoded = result.isUnderflow();
+		}
+		if (decoded) {
+			flushed = decoder.flush(out).isUnderflow();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+	}
+}
@@ -0,0 +1,115 @@
+/* 
+  Copyright (C) 2013 Raquel Pau and Albert Coroleu.
+ 
+ Walkmod is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+ 
+ Walkmod is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser General Public License for more details.
+ 
+ You should have received a copy of the GNU Lesser General Public License
+ along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.util;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates the files of a directory tree while it is being listed. It returns
+ * the same files and in the same order than
+ * <code>FileUtils.listFiles(directory, fileFilter, dirFilter)</code>, but each
+ * directory is only listed when the iteration reaches it, so the first files
+ * are available immediately and the whole tree is never held in memory.
+ */
+class DirectoryIterator implements Iterator<File> {
+
+	private final FileFilter fileFilter;
+
+	private final FileFilter dirFilter;
+
+	private final LinkedList<Level> levels = new LinkedList<Level>();
+
+	private File next;
+
+	/**
+	 * @param directory
+	 *            the root directory, which is always listed
+	 * @param fileFilter
+	 *            the filter of the files to return
+	 * @param dirFilter
+	 *            the filter of the subdirectories to list. If it is null, the
+	 *            subdirectories are not listed.
+	 */
+	public DirectoryIterator(File directory, FileFilter fileFilter, FileFilter dirFilter) {
+		this.fileFilter = fileFilter;
+		this.dirFilter = dirFilter;
+		push(directory);
+	}
+
+	private void push(File directory) {
+		File[] found = directory.listFiles();
+		if (found != null && found.length > 0) {
+			levels.addLast(new Level(found));
+		}
+	}
+
+	private File fetch() {
+		while (!levels.isEmpty()) {
+			Level level = levels.getLast();
+			if (level.index == level.files.length) {
+				levels.removeLast();
+			} else {
+				File file = level.files[level.index++];
+				if (file.isDirectory()) {
+					if (dirFilter != null && dirFilter.accept(file)) {
+						push(file);
+					}
+				} else if (fileFilter.accept(file)) {
+					return file;
+				}
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next == null) {
+			next = fetch();
+		}
+		return next != null;
+	}
+
+	@Override
+	public File next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		File result = next;
+		next = null;
+		return result;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	private static final class Level {
+
+		private final File[] files;
+
+		private int index = 0;
+
+		Level(File[] files) {
+			this.files = files;
+		}
+	}
+}
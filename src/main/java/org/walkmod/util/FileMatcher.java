@@ -0,0 +1,225 @@
+/* 
+  Copyright (C) 2013 Raquel Pau and Albert Coroleu.
+ 
+ Walkmod is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+ 
+ Walkmod is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser General Public License for more details.
+ 
+ You should have received a copy of the GNU Lesser General Public License
+ along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.util;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FilenameUtils;
+
+/**
+ * Immutable filter of the files and directories of a {@link FileResource}
+ * according to its include and exclude patterns. The patterns are compiled
+ * once: the literal ones into prefix trees and the ones with wildcards into
+ * regular expressions, so each decision costs a walk over the path instead of
+ * a loop over all the patterns.
+ * 
+ * A path is included if it is a prefix of an include, if an include is a
+ * prefix of it or if it matches an include with wildcards. A path is excluded
+ * if it matches an exclude or if an exclude is a prefix of its parent
+ * directory. Relative patterns are resolved against the root directory and a
+ * trailing <code>/**</code> is ignored.
+ */
+public final class FileMatcher implements FileFilter {
+
+	private final boolean acceptAll;
+
+	private final boolean hasIncludes;
+
+	private final Trie includes = new Trie();
+
+	private final Pattern[] includeWildcards;
+
+	private final Trie excludes = new Trie();
+
+	private final Pattern[] excludeWildcards;
+
+	private FileMatcher(String root, String[] includes, String[] excludes) {
+		this.acceptAll = includes == null && excludes == null;
+		this.hasIncludes = includes != null;
+		this.includeWildcards = compile(root, includes, this.includes);
+		this.excludeWildcards = compile(root, excludes, this.excludes);
+	}
+
+	/**
+	 * Compiles the include and exclude patterns of a root directory. The
+	 * given arrays are not modified.
+	 * 
+	 * @param root
+	 *            the root directory
+	 * @param includes
+	 *            the include patterns or null to include everything
+	 * @param excludes
+	 *            the exclude patterns or null to exclude nothing
+	 * @return the compiled matcher
+	 */
+	public static FileMatcher compile(File root, String[] includes, String[] excludes) {
+		return new FileMatcher(FilenameUtils.normalize(root.getAbsolutePath(), true), includes, excludes);
+	}
+
+	private static Pattern[] compile(String root, String[] patterns, Trie literals) {
+		List<Pattern> wildcards = new LinkedList<Pattern>();
+		if (patterns != null) {
+			for (int i = 0; i < patterns.length; i++) {
+				String pattern = resolve(root, patterns[i]);
+				literals.add(pattern);
+				if (pattern.indexOf('*') != -1 || pattern.indexOf('?') != -1) {
+					wildcards.add(toRegex(pattern));
+				}
+			}
+		}
+		return wildcards.toArray(new Pattern[wildcards.size()]);
+	}
+
+	private static String resolve(String root, String pattern) {
+		if (!pattern.startsWith(root)) {
+			pattern = root + "/" + pattern;
+		}
+		if (pattern.endsWith("**")) {
+			pattern = pattern.substring(0, pattern.length() - 3);
+		}
+		return pattern;
+	}
+
+	private static Pattern toRegex(String wildcard) {
+		StringBuilder regex = new StringBuilder();
+		int start = 0;
+		for (int i = 0; i < wildcard.length(); i++) {
+			char c = wildcard.charAt(i);
+			if (c == '*' || c == '?') {
+				if (start < i) {
+					regex.append(Pattern.quote(wildcard.substring(start, i)));
+				}
+				regex.append(c == '*' ? ".*" : ".");
+				start = i + 1;
+			}
+		}
+		if (start < wildcard.length()) {
+			regex.append(Pattern.quote(wildcard.substring(start)));
+		}
+		return Pattern.compile(regex.toString(), Pattern.DOTALL);
+	}
+
+	@Override
+	public boolean accept(File file) {
+		if (acceptAll) {
+			return true;
+		}
+		return accept(FilenameUtils.normalize(file.getAbsolutePath(), true));
+	}
+
+	/**
+	 * Evaluates a normalized (with unix separators) absolute path.
+	 */
+	public boolean accept(String path) {
+		if (acceptAll) {
+			return true;
+		}
+		return isIncluded(path) && !isExcluded(path);
+	}
+
+	private boolean isIncluded(String path) {
+		if (!hasIncludes) {
+			return true;
+		}
+		return includes.isPrefixOfAny(path) || includes.hasPrefixOf(path, path.length())
+				|| matchesAny(includeWildcards, path);
+	}
+
+	private boolean isExcluded(String path) {
+		if (excludes.contains(path)) {
+			return true;
+		}
+		int parent = path.lastIndexOf('/');
+		if (parent != -1 && excludes.hasPrefixOf(path, parent)) {
+			return true;
+		}
+		return matchesAny(excludeWildcards, path);
+	}
+
+	private static boolean matchesAny(Pattern[] patterns, String path) {
+		for (int i = 0; i < patterns.length; i++) {
+			if (patterns[i].matcher(path).matches()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static final class Trie {
+
+		private final Map<Character, Trie> children = new HashMap<Character, Trie>();
+
+		private boolean terminal = false;
+
+		void add(String word) {
+			Trie node = this;
+			for (int i = 0; i < word.length(); i++) {
+				Character c = word.charAt(i);
+				Trie child = node.children.get(c);
+				if (child == null) {
+					child = new Trie();
+					node.children.put(c, child);
+				}
+				node = child;
+			}
+			node.terminal = true;
+		}
+
+		private Trie find(String s, int length) {
+			Trie node = this;
+			for (int i = 0; i < length && node != null; i++) {
+				node = node.children.get(s.charAt(i));
+			}
+			return node;
+		}
+
+		boolean contains(String s) {
+			Trie node = find(s, s.length());
+			return node != null && node.terminal;
+		}
+
+		/**
+		 * Returns if the string is a prefix of any word.
+		 */
+		boolean isPrefixOfAny(String s) {
+			return find(s, s.length()) != null;
+		}
+
+		/**
+		 * Returns if any word is a prefix of the first characters of the
+		 * string.
+		 */
+		boolean hasPrefixOf(String s, int length) {
+			Trie node = this;
+			for (int i = 0; i < length; i++) {
+				if (node.terminal) {
+					return true;
+				}
+				node = node.children.get(s.charAt(i));
+				if (node == null) {
+					return false;
+				}
+			}
+			return node.terminal;
+		}
+	}
+}
@@ -17,18 +17,28 @@
 package org.walkmod.util;
 
 import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.io.filefilter.IOFileFilter;
 import org.apache.commons.io.filefilter.SuffixFileFilter;
-import org.apache.commons.io.filefilter.TrueFileFilter;
-import org.walkmod.Resource;
+import org.walkmod.SizedResource;
 
-public class FileResource implements Resource<File> {
+public class FileResource implements SizedResource<File> {
+
+	private static final Pattern SLASH = Pattern.compile("/");
 
 	private File file;
 
@@ -38,12 +48,27 @@ public class FileResource implements Resource<File> {
 
 	private String[] excludes;
 
+	private FileMatcher matcher;
+
+	private int parallelism = 1;
+
+	private boolean ordered = true;
+
+	private long mappingThreshold = Long.MAX_VALUE;
+
+	private Collection<File> files;
+
+	private final ConcurrentMap<File, Character> endLines = new ConcurrentHashMap<File, Character>();
+
+	private final ConcurrentMap<String, ConcurrentMap<String, String>> namespaces = new ConcurrentHashMap<String, ConcurrentMap<String, String>>();
+
 	public File getFile() {
 		return file;
 	}
 
 	public void setFile(File file) throws Exception {
 		this.file = file.getCanonicalFile();
+		this.matcher = null;
 	}
 
 	public void setPath(String path) throws Exception {
@@ -67,130 +92,223 @@ public class FileResource implements Resource<File> {
 		return suffixes;
 	}
 
-	private boolean matches(String fileName, String filter) {
+	/**
+	 * Returns the compiled include and exclude patterns. If they have not
+	 * been set with {@link #setMatcher(FileMatcher)}, they are compiled the
+	 * first time.
+	 */
+	public FileMatcher getMatcher() {
+		if (matcher == null) {
+			matcher = FileMatcher.compile(file, includes, excludes);
+		}
+		return matcher;
+	}
 
-		return filter.startsWith(fileName) || FilenameUtils.wildcardMatch(fileName, filter)
-				|| fileName.startsWith(filter);
+	public void setMatcher(FileMatcher matcher) {
+		this.matcher = matcher;
+	}
 
+	public int getParallelism() {
+		return parallelism;
 	}
 
-	@Override
-	public Iterator<File> iterator() {
-		String fileNormalized = FilenameUtils.normalize(file.getAbsolutePath(), true);
-		if (includes != null) {
-			for (int i = 0; i < includes.length; i++) {
+	/**
+	 * Sets the number of threads that list the directories. With more than
+	 * one, the subdirectories are listed concurrently while the files are
+	 * iterated.
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("The parallelism must be greater than 0");
+		}
+		this.parallelism = parallelism;
+	}
 
-				if (!includes[i].startsWith(fileNormalized)) {
+	public boolean isOrdered() {
+		return ordered;
+	}
 
-					includes[i] = fileNormalized + "/" + includes[i];
+	/**
+	 * Sets if the files listed concurrently are returned in the same order
+	 * than with a single thread (default) or as soon as they are found.
+	 */
+	public void setOrdered(boolean ordered) {
+		this.ordered = ordered;
+	}
 
-				}
-				if (includes[i].endsWith("**")) {
-					includes[i] = includes[i].substring(0, includes[i].length() - 3);
-				}
-			}
-		}
-		if (excludes != null) {
-			for (int i = 0; i < excludes.length; i++) {
+	public long getMappingThreshold() {
+		return mappingThreshold;
+	}
 
-				if (!excludes[i].startsWith(fileNormalized)) {
-					excludes[i] = fileNormalized + "/" + excludes[i];
+	/**
+	 * Sets the size from which the files are memory mapped by
+	 * {@link #getBuffer(File)} instead of read into the heap. By default, the
+	 * files are never mapped: a mapped file can not be overwritten or renamed
+	 * on Windows until the mapping is garbage collected, so it must only be
+	 * set when the chain does not write the files that it reads (e.g. the
+	 * writer has another output directory).
+	 */
+	public void setMappingThreshold(long mappingThreshold) {
+		this.mappingThreshold = mappingThreshold;
+	}
 
-				}
-				if (excludes[i].endsWith("**")) {
-					excludes[i] = excludes[i].substring(0, excludes[i].length() - 3);
-				}
-			}
-		}
+	public Collection<File> getFiles() {
+		return files;
+	}
 
-		if (file.isDirectory()) {
+	/**
+	 * Sets the files to iterate instead of scanning the directory (e.g. the
+	 * files that have been modified). The files that are not inside the
+	 * directory, that do not exist or that do not match the extensions, the
+	 * includes and the excludes are skipped, so the result is the same than
+	 * scanning the directory and keeping only these files. Relative files are
+	 * resolved against the working directory.
+	 */
+	public void setFiles(Collection<File> files) {
+		this.files = files;
+	}
 
-			IOFileFilter filter = null;
-
-			IOFileFilter directoryFilter = TrueFileFilter.INSTANCE;
-			if (excludes != null || includes != null) {
-
-				directoryFilter = new IOFileFilter() {
-
-					@Override
-					public boolean accept(File dir, String name) {
-
-						boolean excludesEval = false;
-						boolean includesEval = false;
-						String aux = FilenameUtils.normalize(name, true);
-						if (excludes != null) {
-							for (int i = 0; i < excludes.length && !excludesEval; i++) {
-								excludesEval = (FilenameUtils.wildcardMatch(aux, excludes[i]) || dir.getAbsolutePath()
-										.startsWith(excludes[i]));
-							}
-						}
-						if (includes != null) {
-							for (int i = 0; i < includes.length && !includesEval; i++) {
-								includesEval = matches(aux, includes[i]);
-							}
-						} else {
-							includesEval = true;
-						}
-						return (includesEval && !excludesEval) || (includes == null && excludes == null);
+	/**
+	 * Returns the contents of a file as a buffer to be parsed, e.g. with
+	 * {@link org.walkmod.walkers.Parsers}. The files larger than the mapping
+	 * threshold (if it has been set) are memory mapped, so their contents are
+	 * not copied into the heap.
+	 * 
+	 * @param file
+	 *            the file to read
+	 * @return the file contents
+	 * @throws IOException
+	 *             if the file can not be read
+	 */
+	public ByteBuffer getBuffer(File file) throws IOException {
+		if (file.length() >= mappingThreshold) {
+			FileInputStream is = new FileInputStream(file);
+			try {
+				FileChannel channel = is.getChannel();
+				return detectEndLine(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+			} finally {
+				is.close();
+			}
+		}
+		return detectEndLine(file, ByteBuffer.wrap(FileUtils.readFileToByteArray(file)));
+	}
 
-					}
+	/**
+	 * Keeps the end of line of the contents of a file that has been read, so
+	 * the writers do not need to read it again.
+	 */
+	protected ByteBuffer detectEndLine(File file, ByteBuffer buffer) {
+		setEndLineChar(file, LineEndings.detect(buffer));
+		return buffer;
+	}
 
-					@Override
-					public boolean accept(File file) {
-						boolean excludesEval = false;
-						boolean includesEval = false;
-
-						String aux = FilenameUtils.normalize(file.getAbsolutePath(), true);
-						if (excludes != null) {
-
-							for (int i = 0; i < excludes.length && !excludesEval; i++) {
-								excludesEval = (FilenameUtils.wildcardMatch(aux, excludes[i]) || file.getParentFile()
-										.getAbsolutePath().startsWith(excludes[i]));
-							}
-						}
-						if (includes != null) {
-							for (int i = 0; i < includes.length && !includesEval; i++) {
-								includesEval = matches(aux, includes[i]);
-							}
-						} else {
-							includesEval = true;
-						}
-						boolean result = (includesEval && !excludesEval) || (includes == null && excludes == null);
-
-						return result;
+	/**
+	 * Keeps the end of line of a file that has been detected while reading it
+	 * in another way (e.g. when it is prefetched).
+	 */
+	protected void setEndLineChar(File file, char endLine) {
+		endLines.put(file, endLine);
+	}
 
-					}
-				};
-				if (extensions == null) {
-					filter = directoryFilter;
+	/**
+	 * Returns the end of line (<code>'\r'</code> or <code>'\n'</code>) of a
+	 * file whose contents have been read with {@link #getBuffer(File)} or
+	 * prefetched by a {@link PrefetchingFileResource}, or <code>'\0'</code>
+	 * if it has not been read. The walkers that parse the files with
+	 * {@link org.walkmod.walkers.Parser#parse(File)} do not read them through
+	 * the resource, so without prefetching their writers still read the
+	 * beginning of each written file to detect it.
+	 */
+	public char getEndLineChar(File file) {
+		Character endLine = endLines.get(file);
+		if (endLine == null) {
+			return '\0';
+		}
+		return endLine;
+	}
 
-				} else {
-					String[] suffixes = toSuffixes(extensions);
-					filter = new SuffixFileFilter(suffixes);
-				}
+	/**
+	 * Forgets the end of line of a file once it has been walked and its
+	 * results written, so it is not kept for the whole chain.
+	 */
+	public void removeEndLineChar(File file) {
+		endLines.remove(file);
+	}
 
-			} else {
-				if (extensions == null) {
-					filter = TrueFileFilter.INSTANCE;
-				} else {
-					String[] suffixes = toSuffixes(extensions);
-					filter = new SuffixFileFilter(suffixes);
-				}
+	@Override
+	public Iterator<File> iterator() {
+		if (file.isDirectory()) {
+			FileMatcher directoryFilter = getMatcher();
+			FileFilter filter = directoryFilter;
+			if (extensions != null) {
+				filter = new SuffixFileFilter(toSuffixes(extensions));
 			}
-
-			return FileUtils.listFiles(file, filter, directoryFilter).iterator();
+			if (files != null) {
+				return listedFiles(filter, directoryFilter).iterator();
+			}
+			if (parallelism > 1) {
+				return new ParallelDirectoryIterator(file, filter, directoryFilter, parallelism, ordered);
+			}
+			return new DirectoryIterator(file, filter, directoryFilter);
 		}
 		Collection<File> aux = new LinkedList<File>();
-		if (extensions == null) {
+		if (extensions == null && (files == null || isListed(file))) {
 			aux.add(file);
 		}
 		return aux.iterator();
 	}
 
+	private boolean isListed(File element) {
+		String path = canonicalPath(element);
+		for (File listed : files) {
+			if (path != null && path.equals(canonicalPath(listed))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private Set<File> listedFiles(FileFilter filter, FileFilter directoryFilter) {
+		Set<File> result = new LinkedHashSet<File>();
+		String root = canonicalPath(file);
+		if (root == null) {
+			return result;
+		}
+		String prefix = root.endsWith(File.separator) ? root : root + File.separator;
+		for (File listed : files) {
+			String path = canonicalPath(listed);
+			if (path != null && path.startsWith(prefix)) {
+				// rebuilt from the root as the directory scan does
+				String[] names = path.substring(prefix.length()).split(Pattern.quote(File.separator));
+				File current = file;
+				boolean accepted = true;
+				for (int i = 0; i < names.length - 1 && accepted; i++) {
+					current = new File(current, names[i]);
+					accepted = directoryFilter.accept(current);
+				}
+				if (accepted) {
+					current = new File(current, names[names.length - 1]);
+					if (current.isFile() && filter.accept(current)) {
+						result.add(current);
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	private static String canonicalPath(File file) {
+		try {
+			return file.getCanonicalPath();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
 	@Override
 	public String getNearestNamespace(Object element, String regexSeparator) {
 		if (element instanceof File) {
-			return ((File) element).getParentFile().getPath().replaceAll("/", regexSeparator);
+			return getNamespace(((File) element).getParentFile().getPath(), regexSeparator);
 		}
 		throw new IllegalArgumentException();
 	}
@@ -198,7 +316,36 @@ public class FileResource implements Resource<File> {
 	@Override
 	public String getOwnerNamespace(Object element, String regexSeparator) {
 		if (element instanceof File) {
-			return ((File) element).getParent().replaceAll("/", regexSeparator);
+			return getNamespace(((File) element).getParent(), regexSeparator);
+		}
+		throw new IllegalArgumentException();
+	}
+
+	/**
+	 * Returns the namespace of a directory. The namespaces are cached by
+	 * directory, since all the files of a directory share it.
+	 */
+	private String getNamespace(String dir, String regexSeparator) {
+		ConcurrentMap<String, String> cache = namespaces.get(regexSeparator);
+		if (cache == null) {
+			cache = new ConcurrentHashMap<String, String>();
+			ConcurrentMap<String, String> previous = namespaces.putIfAbsent(regexSeparator, cache);
+			if (previous != null) {
+				cache = previous;
+			}
+		}
+		String namespace = cache.get(dir);
+		if (namespace == null) {
+			namespace = SLASH.matcher(dir).replaceAll(regexSeparator);
+			cache.putIfAbsent(dir, namespace);
+		}
+		return namespace;
+	}
+
+	@Override
+	public long getSize(Object element) {
+		if (element instanceof File) {
+			return ((File) element).length();
 		}
 		throw new IllegalArgumentException();
 	}
@@ -209,11 +356,13 @@ public class FileResource implements Resource<File> {
 
 	public void setIncludes(String[] includes) {
 		if (includes != null && System.getProperty("os.name").toLowerCase().contains("windows")) {
+			includes = includes.clone();
 			for (int i = 0; i < includes.length; i++) {
 				includes[i] = FilenameUtils.normalize(includes[i], true);
 			}
 		}
 		this.includes = includes;
+		this.matcher = null;
 
 	}
 
@@ -223,10 +372,12 @@ public class FileResource implements Resource<File> {
 
 	public void setExcludes(String[] excludes) {
 		if (excludes != null && System.getProperty("os.name").toLowerCase().contains("windows")) {
+			excludes = excludes.clone();
 			for (int i = 0; i < excludes.length; i++) {
 				excludes[i] = FilenameUtils.normalize(excludes[i], true);
 			}
 		}
 		this.excludes = excludes;
+		this.matcher = null;
 	}
 }
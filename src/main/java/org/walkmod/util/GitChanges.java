@@ -0,0 +1,146 @@
+/* 
+  Copyright (C) 2013 Raquel Pau and Albert Coroleu.
+ 
+ Walkmod is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+ 
+ Walkmod is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser General Public License for more details.
+ 
+ You should have received a copy of the GNU Lesser General Public License
+ along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Resolves the files of a local git repository that have been added or
+ * modified since a reference (a commit, a branch or a tag). The working tree
+ * is compared with the reference, so the uncommitted changes and the
+ * untracked files that are not ignored are also returned. Renamed files are
+ * returned with their new name. Only the local repository is read.
+ */
+public final class GitChanges {
+
+	private GitChanges() {
+	}
+
+	/**
+	 * Returns the files added or modified since a reference.
+	 * 
+	 * @param dir
+	 *            a directory of the git repository
+	 * @param ref
+	 *            the reference to compare with
+	 * @return the changed files that still exist, with absolute paths
+	 * @throws IOException
+	 *             if git can not be executed or the reference is unknown
+	 */
+	public static List<File> since(File dir, String ref) throws IOException {
+		File root = new File(git(dir, "rev-parse", "--show-toplevel").trim());
+		Set<String> paths = new LinkedHashSet<String>();
+		paths.addAll(parseDiff(git(root, "diff", "--name-status", "-z", "-M", "--diff-filter=ACMR", ref, "--")));
+		paths.addAll(parsePaths(git(root, "ls-files", "-z", "--others", "--exclude-standard")));
+		List<File> result = new ArrayList<File>(paths.size());
+		for (String path : paths) {
+			File file = new File(root, path);
+			if (file.isFile()) {
+				result.add(file);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Parses the output of <code>git diff --name-status -z</code>. Renames
+	 * and copies have a score and two paths, so only the new one is kept.
+	 */
+	static List<String> parseDiff(String output) {
+		List<String> result = new ArrayList<String>();
+		String[] fields = output.split("\0");
+		int i = 0;
+		while (i < fields.length) {
+			String status = fields[i++];
+			if (status.length() == 0) {
+				continue;
+			}
+			char type = status.charAt(0);
+			if (type == 'R' || type == 'C') {
+				i++;
+			}
+			if (i < fields.length) {
+				if (type != 'D') {
+					result.add(fields[i]);
+				}
+				i++;
+			}
+		}
+		return result;
+	}
+
+	static List<String> parsePaths(String output) {
+		List<String> result = new ArrayList<String>();
+		for (String path : output.split("\0")) {
+			if (path.length() > 0) {
+				result.add(path);
+			}
+		}
+		return result;
+	}
+
+	private static String git(File dir, String... args) throws IOException {
+		String[] command = new String[args.length + 1];
+		command[0] = "git";
+		System.arraycopy(args, 0, command, 1, args.length);
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.directory(dir);
+		Process process = builder.start();
+		try {
+			process.getOutputStream().close();
+			ByteArrayOutputStream error = new ByteArrayOutputStream();
+			Thread errorReader = drain(process.getErrorStream(), error);
+			String output = IOUtils.toString(process.getInputStream(), "UTF-8");
+			int status = process.waitFor();
+			errorReader.join();
+			if (status != 0) {
+				throw new IOException("git " + args[0] + " failed: " + error.toString("UTF-8").trim());
+			}
+			return output;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for git " + args[0]);
+		} finally {
+			process.destroy();
+		}
+	}
+
+	private static Thread drain(final InputStream is, final ByteArrayOutputStream os) {
+		Thread thread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					IOUtils.copy(is, os);
+				} catch (IOException e) {
+					// the exit status reports the failure
+				}
+			}
+		}, "git-stderr");
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+}
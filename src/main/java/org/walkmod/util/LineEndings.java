@@ -0,0 +1,75 @@
+/* 
+  Copyright (C) 2013 Raquel Pau and Albert Coroleu.
+ 
+ Walkmod is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+ 
+ Walkmod is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser General Public License for more details.
+ 
+ You should have received a copy of the GNU Lesser General Public License
+ along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Detects the end of line of a file from its contents, with the same rules
+ * than {@link org.walkmod.writers.AbstractFileWriter#getEndLineChar(java.io.File)}:
+ * <code>'\r'</code> if the first line ends with a carriage return and
+ * <code>'\n'</code> otherwise.
+ */
+public final class LineEndings {
+
+	private LineEndings() {
+	}
+
+	/**
+	 * Detects the end of line of encoded contents. The line terminators are
+	 * searched as single bytes, which is valid for ASCII compatible encodings
+	 * and UTF-16. The position of the buffer is not modified.
+	 */
+	public static char detect(ByteBuffer buffer) {
+		char result = find(buffer);
+		return result != '\0' ? result : '\n';
+	}
+
+	/**
+	 * Detects the end of line of the beginning of encoded contents, e.g. the
+	 * first block of a file that is read in blocks. Returns <code>'\0'</code>
+	 * if the contents end before the end of line can be decided.
+	 */
+	public static char find(ByteBuffer buffer) {
+		int limit = buffer.limit();
+		boolean newLine = false;
+		for (int i = buffer.position(); i < limit; i++) {
+			byte b = buffer.get(i);
+			if (b == '\r') {
+				return '\r';
+			}
+			if (newLine && b != 0) {
+				return '\n';
+			}
+			newLine = newLine || b == '\n';
+		}
+		return '\0';
+	}
+
+	public static char detect(CharSequence content) {
+		int length = content.length();
+		for (int i = 0; i < length; i++) {
+			char c = content.charAt(i);
+			if (c == '\r') {
+				return '\r';
+			}
+			if (c == '\n') {
+				return i + 1 < length && content.charAt(i + 1) == '\r' ? '\r' : '\n';
+			}
+		}
+		return '\n';
+	}
+}
@@ -0,0 +1,98 @@
+/* 
+  Copyright (C) 2013 Raquel Pau and Albert Coroleu.
+ 
+ Walkmod is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+ 
+ Walkmod is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser General Public License for more details.
+ 
+ You should have received a copy of the GNU Lesser General Public License
+ along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.util;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.CharBuffer;
+
+/**
+ * A file of a {@link MemoryFileSystem} that is iterated by a
+ * {@link MemoryResource}.
+ */
+public final class MemoryFile {
+
+	private final MemoryFileSystem fileSystem;
+
+	private final String path;
+
+	MemoryFile(MemoryFileSystem fileSystem, String path) {
+		this.fileSystem = fileSystem;
+		this.path = path;
+	}
+
+	public MemoryFileSystem getFileSystem() {
+		return fileSystem;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public String getName() {
+		return path.substring(path.lastIndexOf('/') + 1);
+	}
+
+	/**
+	 * Returns a file with the same path. It does not exist on disk, but it
+	 * can be used as the original file of the visitor context, so a
+	 * {@link org.walkmod.writers.MemoryFileWriter} overwrites this file.
+	 */
+	public File getFile() {
+		return new File(path);
+	}
+
+	public String getContent() throws FileNotFoundException {
+		String content = fileSystem.read(path);
+		if (content == null) {
+			throw new FileNotFoundException(path + " does not exist in " + fileSystem.getName());
+		}
+		return content;
+	}
+
+	public Reader getReader() throws FileNotFoundException {
+		return new StringReader(getContent());
+	}
+
+	/**
+	 * Returns the contents to be parsed with
+	 * {@link org.walkmod.walkers.Parsers}.
+	 */
+	public CharBuffer getBuffer() throws FileNotFoundException {
+		return CharBuffer.wrap(getContent());
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o instanceof MemoryFile) {
+			MemoryFile other = (MemoryFile) o;
+			return fileSystem == other.fileSystem && path.equals(other.path);
+		}
+		return false;
+	}
+
+	@Override
+	public int hashCode() {
+		return path.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return path;
+	}
+}
@@ -0,0 +1,162 @@
+/* 
+  Copyright (C) 2013 Raquel Pau and Albert Coroleu.
+ 
+ Walkmod is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+ 
+ Walkmod is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser General Public License for more details.
+ 
+ You should have received a copy of the GNU Lesser General Public License
+ along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.apache.commons.io.FilenameUtils;
+
+/**
+ * Tree of text files kept in memory, so the chains can be executed without
+ * disk I/O (e.g. in tests, benchmarks or embedded executions) with a
+ * {@link org.walkmod.readers.MemoryReader} and a
+ * {@link org.walkmod.writers.MemoryFileWriter}. The file systems are
+ * registered by name, so a reader and a writer configured with the same name
+ * share the files.
+ * 
+ * The paths are relative and use <code>/</code> as separator. They are kept
+ * sorted, so the files of a directory are contiguous.
+ */
+public final class MemoryFileSystem {
+
+	/**
+	 * Name of the file system used by the readers and writers by default
+	 */
+	public static final String DEFAULT = "default";
+
+	private static final ConcurrentMap<String, MemoryFileSystem> FILE_SYSTEMS = new ConcurrentHashMap<String, MemoryFileSystem>();
+
+	private final String name;
+
+	private final ConcurrentNavigableMap<String, String> files = new ConcurrentSkipListMap<String, String>();
+
+	private MemoryFileSystem(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Returns the file system registered with a name. It is created if it
+	 * does not exist.
+	 */
+	public static MemoryFileSystem get(String name) {
+		MemoryFileSystem fs = FILE_SYSTEMS.get(name);
+		if (fs == null) {
+			fs = new MemoryFileSystem(name);
+			MemoryFileSystem previous = FILE_SYSTEMS.putIfAbsent(name, fs);
+			if (previous != null) {
+				fs = previous;
+			}
+		}
+		return fs;
+	}
+
+	/**
+	 * Unregisters a file system and releases its files.
+	 */
+	public static void remove(String name) {
+		MemoryFileSystem fs = FILE_SYSTEMS.remove(name);
+		if (fs != null) {
+			fs.clear();
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Normalizes a path: unix separators and without the leading
+	 * <code>./</code> and <code>/</code>.
+	 */
+	public static String normalize(String path) {
+		String result = FilenameUtils.normalizeNoEndSeparator(path, true);
+		if (result == null) {
+			throw new IllegalArgumentException("Invalid path " + path);
+		}
+		while (result.startsWith("/")) {
+			result = result.substring(1);
+		}
+		return result;
+	}
+
+	public static String normalize(File file) {
+		return normalize(file.getPath());
+	}
+
+	public void write(String path, String content) {
+		if (content == null) {
+			throw new IllegalArgumentException("The content of " + path + " can not be null");
+		}
+		files.put(normalize(path), content);
+	}
+
+	/**
+	 * Returns the content of a file or null if it does not exist.
+	 */
+	public String read(String path) {
+		return files.get(normalize(path));
+	}
+
+	public boolean exists(String path) {
+		return files.containsKey(normalize(path));
+	}
+
+	public boolean delete(String path) {
+		return files.remove(normalize(path)) != null;
+	}
+
+	public void clear() {
+		files.clear();
+	}
+
+	public int size() {
+		return files.size();
+	}
+
+	/**
+	 * Returns the paths of the files inside a directory and its
+	 * subdirectories, in order. The empty path is the root directory.
+	 */
+	public List<String> list(String dir) {
+		String prefix = normalize(dir);
+		Map<String, String> tree = files;
+		if (prefix.length() > 0) {
+			prefix = prefix + "/";
+			// '0' is the character after '/'
+			tree = files.subMap(prefix, prefix.substring(0, prefix.length() - 1) + "0");
+		}
+		return new ArrayList<String>(tree.keySet());
+	}
+
+	/**
+	 * Returns a copy of all the files by path.
+	 */
+	public Map<String, String> getFiles() {
+		return new ConcurrentSkipListMap<String, String>(files);
+	}
+
+	@Override
+	public String toString() {
+		return "MemoryFileSystem[" + name + ", " + files.size() + " files]";
+	}
+}
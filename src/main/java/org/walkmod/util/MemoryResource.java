@@ -0,0 +1,156 @@
+/* 
+  Copyright (C) 2013 Raquel Pau and Albert Coroleu.
+ 
+ Walkmod is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+ 
+ Walkmod is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser General Public License for more details.
+ 
+ You should have received a copy of the GNU Lesser General Public License
+ along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FilenameUtils;
+import org.walkmod.SizedResource;
+
+/**
+ * Resource with the files of a directory of a {@link MemoryFileSystem}. The
+ * extensions, includes and excludes have the same semantics than in a
+ * {@link FileResource}. The files are listed when the iteration starts, so
+ * the files written during the iteration are not returned.
+ */
+public class MemoryResource implements SizedResource<MemoryFile> {
+
+	private static final Pattern SLASH = Pattern.compile("/");
+
+	private MemoryFileSystem fileSystem = MemoryFileSystem.get(MemoryFileSystem.DEFAULT);
+
+	private String path = "";
+
+	private String[] extensions;
+
+	private String[] includes;
+
+	private String[] excludes;
+
+	public MemoryFileSystem getFileSystem() {
+		return fileSystem;
+	}
+
+	public void setFileSystem(MemoryFileSystem fileSystem) {
+		this.fileSystem = fileSystem;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public void setPath(String path) {
+		this.path = path == null ? "" : MemoryFileSystem.normalize(path);
+	}
+
+	public String[] getExtensions() {
+		return extensions;
+	}
+
+	public void setExtensions(String[] extensions) {
+		this.extensions = extensions;
+	}
+
+	public String[] getIncludes() {
+		return includes;
+	}
+
+	public void setIncludes(String[] includes) {
+		this.includes = includes;
+	}
+
+	public String[] getExcludes() {
+		return excludes;
+	}
+
+	public void setExcludes(String[] excludes) {
+		this.excludes = excludes;
+	}
+
+	@Override
+	public Iterator<MemoryFile> iterator() {
+		// the paths are evaluated as the files of the working directory
+		File root = new File(path);
+		FileMatcher matcher = FileMatcher.compile(root, includes, excludes);
+		String rootPath = FilenameUtils.normalize(root.getAbsolutePath(), true);
+		List<MemoryFile> result = new ArrayList<MemoryFile>();
+		List<String> paths;
+		if (fileSystem.exists(path)) {
+			paths = new ArrayList<String>();
+			paths.add(path);
+		} else {
+			paths = fileSystem.list(path);
+		}
+		for (String file : paths) {
+			if (isAccepted(matcher, rootPath, file)) {
+				result.add(new MemoryFile(fileSystem, file));
+			}
+		}
+		return result.iterator();
+	}
+
+	private boolean isAccepted(FileMatcher matcher, String rootPath, String file) {
+		if (extensions != null) {
+			boolean found = false;
+			for (int i = 0; i < extensions.length && !found; i++) {
+				found = file.endsWith("." + extensions[i]);
+			}
+			if (!found) {
+				return false;
+			}
+		}
+		if (file.equals(path)) {
+			return true;
+		}
+		String relative = path.length() == 0 ? file : file.substring(path.length() + 1);
+		int index = relative.indexOf('/');
+		while (index != -1) {
+			if (!matcher.accept(rootPath + "/" + relative.substring(0, index))) {
+				return false;
+			}
+			index = relative.indexOf('/', index + 1);
+		}
+		return extensions != null || matcher.accept(rootPath + "/" + relative);
+	}
+
+	@Override
+	public String getNearestNamespace(Object element, String regexSeparator) {
+		if (element instanceof MemoryFile) {
+			String file = ((MemoryFile) element).getPath();
+			int index = file.lastIndexOf('/');
+			return SLASH.matcher(index == -1 ? "" : file.substring(0, index)).replaceAll(regexSeparator);
+		}
+		throw new IllegalArgumentException();
+	}
+
+	@Override
+	public String getOwnerNamespace(Object element, String regexSeparator) {
+		return getNearestNamespace(element, regexSeparator);
+	}
+
+	@Override
+	public long getSize(Object element) {
+		if (element instanceof MemoryFile) {
+			String content = fileSystem.read(((MemoryFile) element).getPath());
+			return content == null ? 0 : content.length();
+		}
+		throw new IllegalArgumentException();
+	}
+}
@@ -0,0 +1,248 @@
+/* 
+  Copyright (C) 2013 Raquel Pau and Albert Coroleu.
+ 
+ Walkmod is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+ 
+ Walkmod is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser General Public License for more details.
+ 
+ You should have received a copy of the GNU Lesser General Public License
+ along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.util;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.walkmod.exceptions.WalkModException;
+
+/**
+ * Iterates the files of a directory tree while a pool of threads lists its
+ * subdirectories concurrently, which pays off with wide trees or slow (e.g.
+ * network mounted) file systems. The listed files are consumed through a
+ * shared queue.
+ * 
+ * If it is ordered, the files are returned in the same order than
+ * {@link DirectoryIterator}: the directories are still listed ahead of the
+ * iteration, but their files are queued in that order. Otherwise, the files
+ * are returned as soon as they are found.
+ */
+class ParallelDirectoryIterator implements Iterator<File> {
+
+	private static final File END = new File("");
+
+	private final FileFilter fileFilter;
+
+	private final FileFilter dirFilter;
+
+	private final ExecutorService executor;
+
+	private final boolean ordered;
+
+	private final BlockingQueue<File> found = new LinkedBlockingQueue<File>();
+
+	private final AtomicInteger pending = new AtomicInteger();
+
+	private final LinkedList<Level> levels = new LinkedList<Level>();
+
+	private volatile Throwable failure;
+
+	private File next;
+
+	private boolean finished = false;
+
+	public ParallelDirectoryIterator(File directory, FileFilter fileFilter, FileFilter dirFilter, int parallelism,
+			boolean ordered) {
+		this.fileFilter = fileFilter;
+		this.dirFilter = dirFilter;
+		this.ordered = ordered;
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(parallelism, parallelism, 1, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "walkmod-crawler");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		// the threads are released even if the iteration is abandoned
+		pool.allowCoreThreadTimeOut(true);
+		this.executor = pool;
+		if (ordered) {
+			levels.add(new Level(executor.submit(new Listing(directory))));
+		} else {
+			pending.incrementAndGet();
+			executor.submit(new Listing(directory));
+		}
+	}
+
+	private File fetchInOrder() throws Exception {
+		while (!levels.isEmpty()) {
+			Level level = levels.getLast();
+			if (level.listing == null) {
+				level.open();
+			}
+			if (level.index == level.listing.entries.length) {
+				levels.removeLast();
+			} else {
+				int i = level.index++;
+				if (level.subdirectories[i] != null) {
+					levels.addLast(new Level(level.subdirectories[i]));
+				} else if (level.listing.accepted[i]) {
+					return level.listing.entries[i];
+				}
+			}
+		}
+		return null;
+	}
+
+	private File fetchAsFound() throws Exception {
+		File file = found.take();
+		if (failure != null) {
+			throw new WalkModException(failure);
+		}
+		return file != END ? file : null;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next == null && !finished) {
+			try {
+				next = ordered ? fetchInOrder() : fetchAsFound();
+			} catch (RuntimeException e) {
+				executor.shutdownNow();
+				throw e;
+			} catch (Exception e) {
+				executor.shutdownNow();
+				throw new WalkModException(e);
+			}
+			if (next == null) {
+				finished = true;
+				executor.shutdown();
+			}
+		}
+		return next != null;
+	}
+
+	@Override
+	public File next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		File result = next;
+		next = null;
+		return result;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Lists a directory and evaluates the filters for its entries.
+	 */
+	private class Listing implements Callable<Listing> {
+
+		private final File directory;
+
+		private File[] entries;
+
+		private boolean[] directories;
+
+		private boolean[] accepted;
+
+		Listing(File directory) {
+			this.directory = directory;
+		}
+
+		@Override
+		public Listing call() throws Exception {
+			try {
+				File[] aux = directory.listFiles();
+				entries = aux != null ? aux : new File[0];
+				directories = new boolean[entries.length];
+				accepted = new boolean[entries.length];
+				for (int i = 0; i < entries.length; i++) {
+					directories[i] = entries[i].isDirectory();
+					if (directories[i]) {
+						accepted[i] = dirFilter != null && dirFilter.accept(entries[i]);
+					} else {
+						accepted[i] = fileFilter.accept(entries[i]);
+					}
+					if (!ordered && accepted[i]) {
+						if (directories[i]) {
+							pending.incrementAndGet();
+							executor.submit(new Listing(entries[i]));
+						} else {
+							found.add(entries[i]);
+						}
+					}
+				}
+			} catch (Throwable e) {
+				if (ordered) {
+					throw new WalkModException(e);
+				}
+				failure = e;
+				found.add(END);
+			} finally {
+				if (!ordered && pending.decrementAndGet() == 0) {
+					found.add(END);
+				}
+			}
+			return this;
+		}
+	}
+
+	private class Level {
+
+		private final Future<Listing> future;
+
+		private Listing listing;
+
+		private Future<Listing>[] subdirectories;
+
+		private int index = 0;
+
+		Level(Future<Listing> future) {
+			this.future = future;
+		}
+
+		@SuppressWarnings("unchecked")
+		void open() throws Exception {
+			try {
+				listing = future.get();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof Exception) {
+					throw (Exception) cause;
+				}
+				throw new WalkModException(cause);
+			}
+			subdirectories = new Future[listing.entries.length];
+			for (int i = 0; i < listing.entries.length; i++) {
+				if (listing.directories[i] && listing.accepted[i]) {
+					subdirectories[i] = executor.submit(new Listing(listing.entries[i]));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,342 @@
+/* 
+  Copyright (C) 2013 Raquel Pau and Albert Coroleu.
+ 
+ Walkmod is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+ 
+ Walkmod is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser General Public License for more details.
+ 
+ You should have received a copy of the GNU Lesser General Public License
+ along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+import org.walkmod.exceptions.WalkModException;
+
+/**
+ * {@link FileResource} that reads the contents of the next files in a
+ * background thread while the walker processes the current one. The contents
+ * are kept in a buffer bounded by a number of files and of bytes, and they are
+ * retrieved with {@link #getContent(File)}. The files that are not retrieved
+ * are still read ahead, so they are in the cache of the operating system when
+ * the parser opens them.
+ * 
+ * A file that can not be prefetched is returned anyway, so the walker reports
+ * the error when it reads it. An error listing the files is thrown by the
+ * iterator once the previous files have been returned.
+ * 
+ * Only one iteration at a time is supported.
+ */
+public class PrefetchingFileResource extends FileResource {
+
+	private static final File END = new File("");
+
+	private static Logger log = Logger.getLogger(PrefetchingFileResource.class);
+
+	private int prefetch = 16;
+
+	private long bufferSize = 16 * 1024 * 1024;
+
+	private final Map<File, byte[]> buffers = new LinkedHashMap<File, byte[]>();
+
+	private long bufferedBytes = 0;
+
+	private long peakBufferedBytes = 0;
+
+	private long prefetchedBytes = 0;
+
+	private int hits = 0;
+
+	private int misses = 0;
+
+	private int unused = 0;
+
+	private Thread prefetcher;
+
+	public int getPrefetch() {
+		return prefetch;
+	}
+
+	/**
+	 * Sets the maximum number of files that are read ahead.
+	 */
+	public void setPrefetch(int prefetch) {
+		if (prefetch < 1) {
+			throw new IllegalArgumentException("The number of prefetched files must be greater than 0");
+		}
+		this.prefetch = prefetch;
+	}
+
+	public long getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * Sets the maximum number of bytes that are kept in the buffer. Larger
+	 * files are not buffered.
+	 */
+	public void setBufferSize(long bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	@Override
+	public Iterator<File> iterator() {
+		final Iterator<File> files = super.iterator();
+		final BlockingQueue<File> queue = new ArrayBlockingQueue<File>(prefetch);
+		final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+		synchronized (this) {
+			if (prefetcher != null) {
+				prefetcher.interrupt();
+			}
+			buffers.clear();
+			bufferedBytes = 0;
+			peakBufferedBytes = 0;
+			prefetchedBytes = 0;
+			hits = 0;
+			misses = 0;
+			unused = 0;
+			prefetcher = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						while (files.hasNext()) {
+							File file = files.next();
+							try {
+								buffer(file, queue);
+							} catch (IOException e) {
+								log.warn("Error prefetching " + file.getPath() + ": " + e.getMessage());
+							}
+							queue.put(file);
+						}
+					} catch (InterruptedException e) {
+						return;
+					} catch (RuntimeException e) {
+						failure.set(e);
+					}
+					try {
+						queue.put(END);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}, "walkmod-prefetcher");
+			prefetcher.setDaemon(true);
+			prefetcher.start();
+		}
+		return new Iterator<File>() {
+
+			private final LinkedList<File> returned = new LinkedList<File>();
+
+			private File next;
+
+			private boolean finished = false;
+
+			@Override
+			public boolean hasNext() {
+				if (next == null && !finished) {
+					try {
+						next = queue.take();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new WalkModException(e);
+					}
+					if (next == END) {
+						next = null;
+						finished = true;
+						release(returned);
+						log.info(PrefetchingFileResource.this.toString());
+					}
+				}
+				if (finished && failure.get() != null) {
+					throw failure.get();
+				}
+				return next != null;
+			}
+
+			@Override
+			public File next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				File result = next;
+				next = null;
+				returned.add(result);
+				if (returned.size() > prefetch) {
+					release(returned.removeFirst());
+				}
+				return result;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	private void buffer(File file, BlockingQueue<File> queue) throws IOException, InterruptedException {
+		long length = file.length();
+		// the files that are memory mapped are only read ahead
+		boolean fits = length <= bufferSize && length < getMappingThreshold();
+		synchronized (this) {
+			// the buffered files may be waiting to be released by the walker, so it
+			// only waits while the walker has other files to process
+			while (fits && bufferedBytes > 0 && bufferedBytes + length > bufferSize) {
+				if (queue.isEmpty()) {
+					fits = false;
+				} else {
+					wait(10);
+				}
+			}
+		}
+		if (!fits) {
+			readAhead(file);
+			return;
+		}
+		byte[] content = FileUtils.readFileToByteArray(file);
+		detectEndLine(file, ByteBuffer.wrap(content));
+		synchronized (this) {
+			buffers.put(file, content);
+			bufferedBytes += content.length;
+			prefetchedBytes += content.length;
+			peakBufferedBytes = Math.max(peakBufferedBytes, bufferedBytes);
+		}
+	}
+
+	/**
+	 * Reads a file that is not buffered, so that it is in the cache of the
+	 * operating system when it is parsed. Its end of line is detected from
+	 * the first block.
+	 */
+	private void readAhead(File file) throws IOException {
+		InputStream is = new FileInputStream(file);
+		try {
+			byte[] aux = new byte[64 * 1024];
+			int read = is.read(aux);
+			if (read > 0) {
+				char endLine = LineEndings.find(ByteBuffer.wrap(aux, 0, read));
+				if (endLine == '\0' && read == file.length()) {
+					endLine = '\n';
+				}
+				if (endLine != '\0') {
+					setEndLineChar(file, endLine);
+				}
+			}
+			while (read != -1) {
+				read = is.read(aux);
+			}
+		} finally {
+			is.close();
+		}
+	}
+
+	private synchronized byte[] remove(File file) {
+		byte[] content = buffers.remove(file);
+		if (content != null) {
+			bufferedBytes -= content.length;
+			notifyAll();
+		}
+		return content;
+	}
+
+	private synchronized void release(File file) {
+		if (remove(file) != null) {
+			unused++;
+		}
+	}
+
+	private synchronized void release(Iterable<File> files) {
+		for (File file : files) {
+			release(file);
+		}
+	}
+
+	/**
+	 * Returns the contents of a file. If the file has been prefetched, its
+	 * contents are taken from (and released from) the buffer. Otherwise, the
+	 * file is read.
+	 * 
+	 * @param file
+	 *            the file to read
+	 * @return the file contents
+	 * @throws IOException
+	 *             if the file can not be read
+	 */
+	public byte[] getContent(File file) throws IOException {
+		byte[] content = remove(file);
+		synchronized (this) {
+			if (content != null) {
+				hits++;
+			} else {
+				misses++;
+			}
+		}
+		if (content == null) {
+			content = FileUtils.readFileToByteArray(file);
+		}
+		return content;
+	}
+
+	@Override
+	public ByteBuffer getBuffer(File file) throws IOException {
+		if (file.length() >= getMappingThreshold()) {
+			return super.getBuffer(file);
+		}
+		return detectEndLine(file, ByteBuffer.wrap(getContent(file)));
+	}
+
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	public synchronized int getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of prefetched files that have been discarded without
+	 * being retrieved.
+	 */
+	public synchronized int getUnused() {
+		return unused;
+	}
+
+	public synchronized long getBufferedBytes() {
+		return bufferedBytes;
+	}
+
+	public synchronized long getPeakBufferedBytes() {
+		return peakBufferedBytes;
+	}
+
+	public synchronized long getPrefetchedBytes() {
+		return prefetchedBytes;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "[prefetch] " + hits + " hits, " + misses + " misses, " + unused + " unused, " + prefetchedBytes
+				+ " bytes prefetched, " + peakBufferedBytes + " bytes buffered at most";
+	}
+}
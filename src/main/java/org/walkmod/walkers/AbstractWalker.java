@@ -16,54 +16,116 @@
 
 package org.walkmod.walkers;
 
+import java.io.File;
 import java.lang.reflect.Method;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
 import org.walkmod.ChainWalker;
 import org.walkmod.Resource;
+import org.walkmod.SizedResource;
 import org.walkmod.conf.entities.ChainConfig;
 import org.walkmod.conf.entities.TransformationConfig;
 import org.walkmod.exceptions.WalkModException;
 import org.walkmod.merger.IdentificableNode;
 import org.walkmod.merger.MergeEngine;
 import org.walkmod.merger.Mergeable;
+import org.walkmod.util.FileResource;
 
 public abstract class AbstractWalker implements ChainWalker {
 
    public static final String NAMESPACE_SEPARATOR = "::";
 
+   /**
+    * The visited elements are kept until the chain ends.
+    */
+   public static final String VISITED_ELEMENTS_CHAIN = "chain";
+
+   /**
+    * The visited elements are released once the resource element that has produced them
+    * (e.g. the file) has been walked and written.
+    */
+   public static final String VISITED_ELEMENTS_FILE = "file";
+
+   /**
+    * The visited elements are compared by identity and weakly referenced.
+    */
+   public static final String VISITED_ELEMENTS_WEAK = "weak";
+
+   /**
+    * The visited files are kept as a hash of their path. The rest of elements are weakly
+    * referenced. Unlike the other policies, the files are compared by their absolute path
+    * and the rest of elements by identity instead of with <code>equals</code>, and the
+    * visited elements can not be iterated.
+    */
+   public static final String VISITED_ELEMENTS_PATH_HASH = "path-hash";
+
+   /**
+    * The resource elements are walked in the order of the resource.
+    */
+   public static final String SCHEDULING_FIFO = "fifo";
+
+   /**
+    * The resource elements are walked from the largest to the smallest one, according to
+    * the {@link SizedResource} sizes.
+    */
+   public static final String SCHEDULING_LARGEST_FIRST = "largest-first";
+
    private List<Object> visitor;
 
    private Object writer;
 
+   private WriterDispatchPlan writerPlan;
+
    private Resource<?> resource;
 
    private String rootNamespace;
 
+   private NamespaceMatcher namespaceMatcher;
+
    private ChainConfig chainConfig;
 
    private Set<Object> visitedElements;
 
+   private String visitedElementsPolicy = VISITED_ELEMENTS_CHAIN;
+
    private Collection<VisitorMessage> visitorMessages;
 
    private static Logger log = Logger.getLogger(AbstractWalker.class);
 
    public static final String ORIGINAL_FILE_KEY = "original_file_key";
 
+   /**
+    * End of line (Character) of the original file, detected when it was read, so the
+    * writers do not need to read the file again.
+    */
+   public static final String ORIGINAL_END_LINE_KEY = "original_end_line_key";
+
    private List<String> constraintProviders = null;
 
+   private int workers = 1;
+
+   private String schedulingPolicy = SCHEDULING_FIFO;
+
+   private WorkerReport workerReport;
+
+   private final ThreadLocal<FileTask> currentTask = new ThreadLocal<FileTask>();
+
    public AbstractWalker() {
-      this.visitedElements = new HashSet<Object>();
+      this.visitedElements = Collections.synchronizedSet(new HashSet<Object>());
       this.visitorMessages = new LinkedList<VisitorMessage>();
    }
 
@@ -84,11 +146,9 @@ public abstract class AbstractWalker implements ChainWalker {
 
    protected void visit(Object element, List<Object> visitors, List<TransformationConfig> transformations,
          VisitorContext context) throws Exception {
-      if (rootNamespace != null && !"".equals(rootNamespace)) {
-         String qualifiedName = getResource().getNearestNamespace(element, NAMESPACE_SEPARATOR);
-         if (rootNamespace.startsWith(qualifiedName)) {
-            return;
-         }
+      NamespaceMatcher matcher = getNamespaceMatcher();
+      if (matcher != null && matcher.isAbove(element)) {
+         return;
       }
       if (visitors.isEmpty()) {
          context.addResultNode(element);
@@ -103,48 +163,33 @@ public abstract class AbstractWalker implements ChainWalker {
             if (isMergeable && mergePolicy == null) {
                mergePolicy = "default";
             }
-            Method[] methods = visitor.getClass().getMethods();
+            DispatchTable.Target[] methods = DispatchTable.getVisitMethods(visitor.getClass(), element.getClass());
             List<Object> restVisitors = visitors.subList(index + 1, visitors.size());
             List<TransformationConfig> restTransformations = transformations.subList(index + 1, transformations.size());
-            Set<String> visitedTypes = new HashSet<String>();
             for (int j = 0; j < methods.length; j++) {
-               if (methods[j].getName().equals("visit")) {
-                  Class<?> type = methods[j].getParameterTypes()[0];
-                  if ((!visitedTypes.contains(element.getClass().getName())) && type.isInstance(element)) {
-                     visitedTypes.add(type.getName());
-                     int paramsLength = methods[j].getParameterTypes().length;
-                     Object[] params = new Object[paramsLength];
-                     params[0] = element;
-                     VisitorContext args = new VisitorContext(getChainConfig());
-                     args.putAll(context);
-                     if (paramsLength == 2) {
-                        params[1] = args;
-                     }
-                     methods[j].invoke(visitor, params);
-                     context.getVisitorMessages().addAll(args.getVisitorMessages());
-                     MergeEngine me = null;
-                     if (isMergeable) {
-                        me = chainConfig.getConfiguration().getMergeEngine(mergePolicy);
-                     }
-                     if (args.hasResultNodes()) {
+               VisitorContext args = new VisitorContext(getChainConfig(), context);
+               methods[j].invoke(visitor, element, args);
+               MergeEngine me = null;
+               if (isMergeable) {
+                  me = chainConfig.getConfiguration().getMergeEngine(mergePolicy);
+               }
+               if (args.hasResultNodes()) {
 
-                        Iterator<Object> it = args.getResultNodes().iterator();
+                  Iterator<Object> it = args.getResultNodes().iterator();
 
-                        while (it.hasNext()) {
-                           Object currentArg = it.next();
-                           if (isMergeable) {
-                              currentArg = merge(currentArg, me, context);
-                           }
+                  while (it.hasNext()) {
+                     Object currentArg = it.next();
+                     if (isMergeable) {
+                        currentArg = merge(currentArg, me, context);
+                     }
 
-                           context.addResultNode(currentArg);
+                     context.addResultNode(currentArg);
 
-                           visit(currentArg, restVisitors, restTransformations, context);
-                        }
-                        return;
-                     } else {
-                        context.addResultNode(element);
-                     }
+                     visit(currentArg, restVisitors, restTransformations, context);
                   }
+                  return;
+               } else {
+                  context.addResultNode(element);
                }
             }
             index++;
@@ -180,9 +225,8 @@ public abstract class AbstractWalker implements ChainWalker {
    
    protected void writeAll(Collection<Object> elements, VisitorContext vc) throws Exception {
       if (elements != null) {
-         Iterator<Object> it = elements.iterator();
-         while (it.hasNext()) {
-            write(it.next(), vc);
+         for (Object element : elements) {
+            write(element, vc);
          }
       }
    }
@@ -192,31 +236,66 @@ public abstract class AbstractWalker implements ChainWalker {
    }
 
    protected void write(Object element, VisitorContext vc) throws Exception {
-      Method[] methods = writer.getClass().getMethods();
-      for (int j = 0; j < methods.length; j++) {
-         if (methods[j].getName().equals("write")) {
-            Class<?> type = methods[j].getParameterTypes()[0];
-            int paramsLength = methods[j].getParameterTypes().length;
-            Object[] params = new Object[paramsLength];
-            params[0] = element;
-            if (paramsLength == 2) {
-               params[1] = vc;
-            }
-            if (type.isInstance(element)) {
-               methods[j].invoke(writer, params);
+      putOriginalEndLine(vc);
+      FileTask task = currentTask.get();
+      if (task != null) {
+         task.defer(element, vc);
+      } else {
+         writeNow(element, vc);
+      }
+   }
+
+   /**
+    * Invokes the writer for an element. It is not overridable, so the writes that a worker
+    * defers are replayed by {@link #commit(FileTask)} without running the overrides of
+    * {@link #write(Object, VisitorContext)} again.
+    */
+   private void writeNow(Object element, VisitorContext vc) throws Exception {
+      if (element != null) {
+         DispatchTable.Target[] methods = writerPlan.getWriteMethods(element.getClass());
+         for (int j = 0; j < methods.length; j++) {
+            methods[j].invoke(writer, element, vc);
+         }
+      }
+   }
+
+   /**
+    * Adds the end of line of the original file to the context of a write if the resource
+    * has already read the file.
+    */
+   private void putOriginalEndLine(VisitorContext vc) {
+      if (vc != null && resource instanceof FileResource && !vc.containsKey(ORIGINAL_END_LINE_KEY)) {
+         Object file = vc.get(ORIGINAL_FILE_KEY);
+         if (file instanceof File) {
+            char endLine = ((FileResource) resource).getEndLineChar((File) file);
+            if (endLine != '\0') {
+               vc.put(ORIGINAL_END_LINE_KEY, endLine);
             }
          }
       }
    }
 
+   /**
+    * Releases what the resource keeps about an element once it has been walked (its writes
+    * have already taken the end of line of the original file).
+    */
+   private void walked(Object element) {
+      if (resource instanceof FileResource && element instanceof File) {
+         ((FileResource) resource).removeEndLineChar((File) element);
+      }
+   }
+
    public boolean isVisitable(Object element) throws Exception {
-      if (rootNamespace != null && !"".equals(rootNamespace)) {
-         String qualifiedName = getResource().getNearestNamespace(element, NAMESPACE_SEPARATOR);
-         if (!qualifiedName.startsWith(rootNamespace)) {
-            return false;
-         }
+      NamespaceMatcher matcher = getNamespaceMatcher();
+      if (matcher != null && !matcher.isInside(element)) {
+         return false;
       }
-      return visitedElements.add(element);
+      Set<Object> visited = visitedElements;
+      FileTask task = currentTask.get();
+      if (task != null && task.visitedElements != null) {
+         visited = task.visitedElements;
+      }
+      return visited.add(element);
    }
 
    @Override
@@ -241,9 +320,50 @@ public abstract class AbstractWalker implements ChainWalker {
       this.visitedElements = visitedElements;
    }
 
+   public String getVisitedElementsPolicy() {
+      return visitedElementsPolicy;
+   }
+
+   /**
+    * Sets how the elements checked by {@link #isVisitable(Object)} are tracked:
+    * {@link #VISITED_ELEMENTS_CHAIN} (default), {@link #VISITED_ELEMENTS_FILE},
+    * {@link #VISITED_ELEMENTS_WEAK} or {@link #VISITED_ELEMENTS_PATH_HASH}. The chain policy
+    * keeps every visited element (e.g. every parsed tree) until the chain ends, so the other
+    * ones are preferred for large code bases.
+    */
+   public void setVisitedElementsPolicy(String policy) {
+      if (VISITED_ELEMENTS_CHAIN.equals(policy) || VISITED_ELEMENTS_FILE.equals(policy)) {
+         visitedElements = Collections.synchronizedSet(new HashSet<Object>());
+      } else if (VISITED_ELEMENTS_WEAK.equals(policy)) {
+         visitedElements = Collections.synchronizedSet(new WeakIdentitySet());
+      } else if (VISITED_ELEMENTS_PATH_HASH.equals(policy)) {
+         visitedElements = Collections.synchronizedSet(new PathHashSet());
+      } else {
+         throw new IllegalArgumentException("Unknown visited elements policy: " + policy);
+      }
+      this.visitedElementsPolicy = policy;
+   }
+
+   private boolean isVisitedPerFile() {
+      return VISITED_ELEMENTS_FILE.equals(visitedElementsPolicy);
+   }
+
    @Override
    public void setRootNamespace(String namespace) {
       this.rootNamespace = namespace;
+      this.namespaceMatcher = null;
+   }
+
+   private NamespaceMatcher getNamespaceMatcher() {
+      if (rootNamespace == null || "".equals(rootNamespace)) {
+         return null;
+      }
+      NamespaceMatcher matcher = namespaceMatcher;
+      if (matcher == null || matcher.getResource() != getResource()) {
+         matcher = new NamespaceMatcher(rootNamespace, getResource(), NAMESPACE_SEPARATOR);
+         namespaceMatcher = matcher;
+      }
+      return matcher;
    }
 
    public String getRootNamespace() {
@@ -252,40 +372,179 @@ public abstract class AbstractWalker implements ChainWalker {
 
    public void walk(Object element) throws Exception {
       if (element != null) {
-         Collection<java.lang.Class<?>> types = new LinkedList<Class<?>>();
-         types.add(element.getClass());
-         Queue<java.lang.Class<?>> interfaces = new ConcurrentLinkedQueue<java.lang.Class<?>>(types);
-         Collection<java.lang.Class<?>> visitedTypes = new LinkedList<java.lang.Class<?>>();
-         while (interfaces.size() > 0) {
-            java.lang.Class<?> type = interfaces.poll();
-            if (visitedTypes.add(type)) {
-               try {
-                  Method m = this.getClass().getMethod("accept", type);
-                  m.invoke(this, element);
-                  interfaces.addAll(Arrays.asList(type.getInterfaces()));
-               } catch (NoSuchMethodException e) {
-               }
-            }
+         Method[] methods = DispatchTable.getAcceptMethods(getClass(), element.getClass());
+         for (int i = 0; i < methods.length; i++) {
+            methods[i].invoke(this, element);
          }
       }
    }
 
    @Override
    public void execute() throws Exception {
-      Iterator<?> it = getResource().iterator();
-      while (it.hasNext()) {
-         Object current = it.next();
-         try {
-            walk(current);
-         } catch (WalkModException e) {
-            log.error(e.getMessage());
+      if (workers > 1) {
+         executeInParallel();
+      } else {
+         Iterator<?> it = getResource().iterator();
+         while (it.hasNext()) {
+            Object current = it.next();
+            try {
+               walk(current);
+            } catch (WalkModException e) {
+               log.error(e.getMessage());
+            } finally {
+               walked(current);
+               if (isVisitedPerFile()) {
+                  visitedElements.clear();
+               }
+            }
          }
       }
    }
 
+   /**
+    * Walks the resource elements with a pool of workers. The written nodes and the visitor
+    * messages of each element are kept by its task and committed by the calling thread in the
+    * same order in which the tasks are submitted (the order of the resource, or the largest
+    * first order). Therefore, writers (and the modification counters they update) are used from
+    * a single thread and the produced files, patches and messages do not depend on the thread
+    * scheduling. At most twice as many tasks as workers are pending to be committed.
+    */
+   protected void executeInParallel() throws Exception {
+      ExecutorService executor = Executors.newFixedThreadPool(workers);
+      WorkerReport report = new WorkerReport();
+      try {
+         if (SCHEDULING_LARGEST_FIRST.equals(schedulingPolicy) && getResource() instanceof SizedResource) {
+            executeLargestFirst(executor, report);
+         } else {
+            LinkedList<Future<FileTask>> pending = new LinkedList<Future<FileTask>>();
+            Iterator<?> it = getResource().iterator();
+            while (it.hasNext()) {
+               FileTask task = new FileTask(it.next(), report);
+               if (getResource() instanceof SizedResource) {
+                  task.size = ((SizedResource<?>) getResource()).getSize(task.element);
+               }
+               pending.add(executor.submit(task));
+               if (pending.size() >= workers * 2) {
+                  commit(pending.removeFirst());
+               }
+            }
+            while (!pending.isEmpty()) {
+               commit(pending.removeFirst());
+            }
+         }
+      } finally {
+         executor.shutdownNow();
+         report.finish();
+         workerReport = report;
+      }
+      log.info(report.toString());
+   }
+
+   /**
+    * Submits the resource elements from the largest to the smallest one, so that the idle
+    * workers take the next largest element and the smallest ones fill the end of the
+    * execution. The tasks are committed in the same order, so the walked elements are kept
+    * just until the larger ones submitted before them have been committed.
+    */
+   private void executeLargestFirst(ExecutorService executor, WorkerReport report) throws Exception {
+      SizedResource<?> resource = (SizedResource<?>) getResource();
+      List<FileTask> tasks = new ArrayList<FileTask>();
+      for (Object element : resource) {
+         FileTask task = new FileTask(element, report);
+         task.size = resource.getSize(element);
+         tasks.add(task);
+      }
+      Collections.sort(tasks, new Comparator<FileTask>() {
+         @Override
+         public int compare(FileTask t1, FileTask t2) {
+            return t1.size < t2.size ? 1 : (t1.size > t2.size ? -1 : 0);
+         }
+      });
+      LinkedList<Future<FileTask>> pending = new LinkedList<Future<FileTask>>();
+      for (FileTask task : tasks) {
+         pending.add(executor.submit(task));
+         if (pending.size() >= workers * 2) {
+            commit(pending.removeFirst());
+         }
+      }
+      while (!pending.isEmpty()) {
+         commit(pending.removeFirst());
+      }
+   }
+
+   private void commit(Future<FileTask> future) throws Exception {
+      try {
+         commit(future.get());
+      } catch (ExecutionException e) {
+         Throwable cause = e.getCause();
+         if (cause instanceof Exception) {
+            throw (Exception) cause;
+         }
+         throw e;
+      }
+   }
+
+   private void commit(FileTask task) throws Exception {
+      if (task.error != null) {
+         log.error(task.error.getMessage());
+      }
+      visitorMessages.addAll(task.messages);
+      for (int i = 0; i < task.writes.size(); i++) {
+         writeNow(task.writes.get(i), task.contexts.get(i));
+      }
+   }
+
+   public int getWorkers() {
+      return workers;
+   }
+
+   public String getSchedulingPolicy() {
+      return schedulingPolicy;
+   }
+
+   /**
+    * Sets the order in which the workers take the resource elements:
+    * {@link #SCHEDULING_FIFO} (default) or {@link #SCHEDULING_LARGEST_FIRST}. The largest
+    * first policy avoids that a large element taken at the end leaves a single worker busy,
+    * but it lists the whole resource before starting and the results are written in the
+    * largest first order instead of the order of the resource. It requires a
+    * {@link SizedResource}.
+    */
+   public void setSchedulingPolicy(String schedulingPolicy) {
+      if (!SCHEDULING_FIFO.equals(schedulingPolicy) && !SCHEDULING_LARGEST_FIRST.equals(schedulingPolicy)) {
+         throw new IllegalArgumentException("Unknown scheduling policy: " + schedulingPolicy);
+      }
+      this.schedulingPolicy = schedulingPolicy;
+   }
+
+   /**
+    * Returns the timings of the workers of the last parallel execution, or null if the walker
+    * has not been executed with more than one worker.
+    */
+   public WorkerReport getWorkerReport() {
+      return workerReport;
+   }
+
+   /**
+    * Sets the number of resource elements that are walked concurrently. Walkers that keep
+    * state about the current element must be safe for concurrent walks to use more than one
+    * worker.
+    */
+   public void setWorkers(int workers) {
+      if (workers < 1) {
+         throw new IllegalArgumentException("The number of workers must be greater than 0");
+      }
+      this.workers = workers;
+   }
+
    @Override
    public void setWriter(Object writer) {
       this.writer = writer;
+      if (writer != null) {
+         writerPlan = WriterDispatchPlan.forWriter(writer.getClass());
+      } else {
+         writerPlan = null;
+      }
    }
 
    public Object getWriter() {
@@ -307,9 +566,11 @@ public abstract class AbstractWalker implements ChainWalker {
    protected void addVisitorMessages(VisitorContext ctx) {
       Collection<String> messages = ctx.getVisitorMessages();
       String location = getLocation(ctx);
+      FileTask task = currentTask.get();
+      Collection<VisitorMessage> target = task != null ? task.messages : this.visitorMessages;
       for (String message : messages) {
          VisitorMessage m = new VisitorMessage(location, message);
-         this.visitorMessages.add(m);
+         target.add(m);
       }
    }
 
@@ -319,36 +580,46 @@ public abstract class AbstractWalker implements ChainWalker {
    protected Object merge(Object object, MergeEngine mergeEngine, VisitorContext vc) {
 
       Object local = null;
-      Collection<Object> rnodes = vc.getResultNodes();
+      Object previous = null;
       boolean previousResult = false;
-      Iterator<Object> it = rnodes.iterator();
+      Iterator<Object> it;
       if (object instanceof IdentificableNode) {
          local = null;
          Comparator cmp = ((IdentificableNode) object).getIdentityComparator();
          boolean deleted = false;
+         // only the result nodes of the same class (and identity key) can be identical
+         Object key = null;
+         if (object instanceof IdentityKeyNode) {
+            key = ((IdentityKeyNode) object).getIdentityKey();
+         }
+         if (key != null) {
+            it = vc.getResultNodesIterator(object.getClass(), key);
+         } else {
+            it = vc.getResultNodesIterator(object.getClass());
+         }
          while (it.hasNext() && local == null) {
             Object current = it.next();
             if (current == object) {
                it.remove();
                deleted = true;
-            } else if (object.getClass().equals(current.getClass())) {
-               if (cmp.compare(current, object) == 0) {
-                  if (deleted) {
-                     local = object;
-                     object = current;
-                  } else {
-                     local = current;
-                  }
+            } else if (cmp.compare(current, object) == 0) {
+               previous = current;
+               if (deleted) {
+                  local = object;
+                  object = current;
+               } else {
+                  local = current;
                }
             }
          }
       } else {
-         it = rnodes.iterator();
+         it = vc.getResultNodesIterator(null);
          while (it.hasNext() && local == null) {
             Object current = it.next();
             if (current == object) {
                it.remove();
             } else if (current.equals(object)) {
+               previous = current;
                local = current;
             }
          }
@@ -364,22 +635,19 @@ public abstract class AbstractWalker implements ChainWalker {
             ((Mergeable) local).merge(object, mergeEngine);
 
             if (previousResult) {
-               it.remove();
+               vc.removeResultNode(previous);
             }
 
             return local;
 
          } else {
             if (previousResult) {
-               it.remove();
+               vc.removeResultNode(previous);
                // vc.addResultNode(object);
             }
             return object;
          }
       }
-      if (previousResult) {
-         it.remove();
-      }
       return local;
    }
 
@@ -387,4 +655,52 @@ public abstract class AbstractWalker implements ChainWalker {
    public boolean hasChanges() {
       return !(getNumModifications() == 0 && getNumAdditions() == 0 && getNumDeletions() == 0);
    }
+
+   private class FileTask implements Callable<FileTask> {
+
+      private final Object element;
+
+      private final List<VisitorMessage> messages = new LinkedList<VisitorMessage>();
+
+      private final List<Object> writes = new ArrayList<Object>(1);
+
+      private final List<VisitorContext> contexts = new ArrayList<VisitorContext>(1);
+
+      private WalkModException error;
+
+      private final Set<Object> visitedElements;
+
+      private final WorkerReport report;
+
+      private long size = 0;
+
+      public FileTask(Object element, WorkerReport report) {
+         this.element = element;
+         this.report = report;
+         this.visitedElements = isVisitedPerFile() ? new HashSet<Object>() : null;
+      }
+
+      public void defer(Object element, VisitorContext vc) {
+         writes.add(element);
+         contexts.add(vc);
+      }
+
+      @Override
+      public FileTask call() throws Exception {
+         currentTask.set(this);
+         long start = System.nanoTime();
+         try {
+            walk(element);
+         } catch (WalkModException e) {
+            error = e;
+         } finally {
+            currentTask.remove();
+            walked(element);
+            if (report != null) {
+               report.record(Thread.currentThread().getName(), start, System.nanoTime(), size);
+            }
+         }
+         return this;
+      }
+   }
 }
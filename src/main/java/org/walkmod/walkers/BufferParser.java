@@ -0,0 +1,33 @@
+/* 
+  Copyright (C) 2013 Raquel Pau and Albert Coroleu.
+ 
+ Walkmod is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+ 
+ Walkmod is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser General Public License for more details.
+ 
+ You should have received a copy of the GNU Lesser General Public License
+ along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.walkers;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+/**
+ * Parser that reads its input directly from buffers, e.g. memory mapped
+ * files, instead of decoding the whole input into a string first. The
+ * {@link Parsers} adapters provide the same entry points for the parsers that
+ * only implement {@link Parser}.
+ */
+public interface BufferParser<T> extends Parser<T> {
+
+	public T parse(CharBuffer text) throws ParseException;
+
+	public T parse(ByteBuffer bytes, String encoding) throws ParseException;
+
+}
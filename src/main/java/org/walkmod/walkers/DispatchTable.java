@@ -0,0 +1,178 @@
+/* 
+  Copyright (C) 2013 Raquel Pau and Albert Coroleu.
+ 
+ Walkmod is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+ 
+ Walkmod is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser General Public License for more details.
+ 
+ You should have received a copy of the GNU Lesser General Public License
+ along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.walkers;
+
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Resolves the reflective methods that the walkers invoke by name (e.g. the
+ * <code>visit</code> methods of the visitors) once per receiver class and
+ * element class. The resolved methods are shared by all the chains. The
+ * cache is weakly keyed by the receiver class and the methods of each class
+ * are softly referenced (they reference the class), so the classes of the
+ * plugins (and their class loaders) can be unloaded once they are no longer
+ * used.
+ */
+public final class DispatchTable {
+
+	private static final Map<Class<?>, Reference<ConcurrentMap<Class<?>, Target[]>>> VISIT_METHODS = Collections
+			.synchronizedMap(new WeakHashMap<Class<?>, Reference<ConcurrentMap<Class<?>, Target[]>>>());
+
+	private static final Map<Class<?>, Reference<ConcurrentMap<Class<?>, Method[]>>> ACCEPT_METHODS = Collections
+			.synchronizedMap(new WeakHashMap<Class<?>, Reference<ConcurrentMap<Class<?>, Method[]>>>());
+
+	private DispatchTable() {
+	}
+
+	/**
+	 * Returns the <code>visit</code> overloads of a visitor class that must be
+	 * invoked for an element class, in the same order and with the same
+	 * semantics than the previous per-node lookup: every public
+	 * <code>visit</code> method whose first parameter accepts the element is
+	 * selected until the one that is declared for the exact element class.
+	 */
+	public static Target[] getVisitMethods(Class<?> visitorType, Class<?> elementType) {
+		ConcurrentMap<Class<?>, Target[]> byElement = getOrCreate(VISIT_METHODS, visitorType);
+		Target[] result = byElement.get(elementType);
+		if (result == null) {
+			result = resolveVisitMethods(visitorType, elementType);
+			byElement.putIfAbsent(elementType, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the <code>accept</code> methods of a walker class that must be
+	 * invoked for an element class, in invocation order. Starting from the
+	 * element class, each type that has an <code>accept</code> method
+	 * contributes that method and then its direct interfaces are inspected.
+	 */
+	public static Method[] getAcceptMethods(Class<?> walkerType, Class<?> elementType) {
+		ConcurrentMap<Class<?>, Method[]> byElement = getOrCreate(ACCEPT_METHODS, walkerType);
+		Method[] result = byElement.get(elementType);
+		if (result == null) {
+			result = resolveAcceptMethods(walkerType, elementType);
+			byElement.putIfAbsent(elementType, result);
+		}
+		return result;
+	}
+
+	private static Method[] resolveAcceptMethods(Class<?> walkerType, Class<?> elementType) {
+		List<Method> methods = new ArrayList<Method>();
+		LinkedList<Class<?>> types = new LinkedList<Class<?>>();
+		types.add(elementType);
+		while (!types.isEmpty()) {
+			Class<?> type = types.poll();
+			Method m = findMethod(walkerType, "accept", type);
+			if (m != null) {
+				methods.add(m);
+				types.addAll(Arrays.asList(type.getInterfaces()));
+			}
+		}
+		return methods.toArray(new Method[methods.size()]);
+	}
+
+	private static Method findMethod(Class<?> type, String name, Class<?> paramType) {
+		try {
+			return type.getMethod(name, paramType);
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	private static Target[] resolveVisitMethods(Class<?> visitorType, Class<?> elementType) {
+		List<Target> targets = new ArrayList<Target>();
+		Method[] methods = visitorType.getMethods();
+		for (int i = 0; i < methods.length; i++) {
+			if (methods[i].getName().equals("visit")) {
+				Class<?>[] params = methods[i].getParameterTypes();
+				if (params.length > 0 && params[0].isAssignableFrom(elementType)) {
+					targets.add(new Target(methods[i], params.length));
+					if (params[0].getName().equals(elementType.getName())) {
+						break;
+					}
+				}
+			}
+		}
+		return targets.toArray(new Target[targets.size()]);
+	}
+
+	static <T> ConcurrentMap<Class<?>, T> getOrCreate(
+			Map<Class<?>, Reference<ConcurrentMap<Class<?>, T>>> cache, Class<?> type) {
+		synchronized (cache) {
+			Reference<ConcurrentMap<Class<?>, T>> ref = cache.get(type);
+			ConcurrentMap<Class<?>, T> result = ref != null ? ref.get() : null;
+			if (result == null) {
+				result = new ConcurrentHashMap<Class<?>, T>();
+				cache.put(type, new SoftReference<ConcurrentMap<Class<?>, T>>(result));
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Removes all the resolved methods. Useful when the plugin classes are
+	 * reloaded with a new class loader.
+	 */
+	public static void clear() {
+		VISIT_METHODS.clear();
+		ACCEPT_METHODS.clear();
+	}
+
+	/**
+	 * A resolved method and its number of parameters. If the method has two
+	 * parameters, the second one receives the visitor context.
+	 */
+	public static final class Target {
+
+		private final Method method;
+
+		private final int paramsLength;
+
+		Target(Method method, int paramsLength) {
+			this.method = method;
+			this.paramsLength = paramsLength;
+		}
+
+		public Method getMethod() {
+			return method;
+		}
+
+		public int getParamsLength() {
+			return paramsLength;
+		}
+
+		public Object invoke(Object receiver, Object element, Object context) throws Exception {
+			Object[] params = new Object[paramsLength];
+			params[0] = element;
+			if (paramsLength == 2) {
+				params[1] = context;
+			}
+			return method.invoke(receiver, params);
+		}
+	}
+}
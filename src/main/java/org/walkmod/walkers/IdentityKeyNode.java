@@ -0,0 +1,34 @@
+/* 
+  Copyright (C) 2013 Raquel Pau and Albert Coroleu.
+ 
+ Walkmod is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+ 
+ Walkmod is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser General Public License for more details.
+ 
+ You should have received a copy of the GNU Lesser General Public License
+ along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.walkers;
+
+import org.walkmod.merger.IdentificableNode;
+
+/**
+ * Node whose identity is also available as a hashable key, so that a merge
+ * finds the identical result nodes with a lookup instead of comparing it
+ * with every result node of its class. Two nodes of the same class must have
+ * equal keys if and only if their identity comparator returns 0, and the key
+ * of a node must not change while it is a result node.
+ */
+public interface IdentityKeyNode extends IdentificableNode {
+
+	/**
+	 * Returns the identity key of the node or null if it has none, so that it
+	 * is compared with all the result nodes of its class.
+	 */
+	public Object getIdentityKey();
+}
@@ -0,0 +1,81 @@
+/* 
+  Copyright (C) 2013 Raquel Pau and Albert Coroleu.
+ 
+ Walkmod is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+ 
+ Walkmod is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser General Public License for more details.
+ 
+ You should have received a copy of the GNU Lesser General Public License
+ along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.walkers;
+
+import org.walkmod.Resource;
+
+/**
+ * Matches the elements of a resource against the root namespace of a walker.
+ * It is built once per root namespace and resource, and remembers the
+ * namespace of the last element, since the walkers check the same element
+ * several times (e.g. when it is visitable and for each visitor that returns
+ * it as a result).
+ */
+final class NamespaceMatcher {
+
+	private final String rootNamespace;
+
+	private final Resource<?> resource;
+
+	private final String separator;
+
+	private volatile Entry last;
+
+	NamespaceMatcher(String rootNamespace, Resource<?> resource, String separator) {
+		this.rootNamespace = rootNamespace;
+		this.resource = resource;
+		this.separator = separator;
+	}
+
+	public Resource<?> getResource() {
+		return resource;
+	}
+
+	public String getNamespace(Object element) {
+		Entry entry = last;
+		if (entry == null || entry.element != element) {
+			entry = new Entry(element, resource.getNearestNamespace(element, separator));
+			last = entry;
+		}
+		return entry.namespace;
+	}
+
+	/**
+	 * Returns if the element belongs to the root namespace.
+	 */
+	public boolean isInside(Object element) {
+		return getNamespace(element).startsWith(rootNamespace);
+	}
+
+	/**
+	 * Returns if the namespace of the element contains the root namespace.
+	 */
+	public boolean isAbove(Object element) {
+		return rootNamespace.startsWith(getNamespace(element));
+	}
+
+	private static final class Entry {
+
+		private final Object element;
+
+		private final String namespace;
+
+		Entry(Object element, String namespace) {
+			this.element = element;
+			this.namespace = namespace;
+		}
+	}
+}
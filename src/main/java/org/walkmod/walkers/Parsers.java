@@ -0,0 +1,50 @@
+/* 
+  Copyright (C) 2013 Raquel Pau and Albert Coroleu.
+ 
+ Walkmod is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+ 
+ Walkmod is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser General Public License for more details.
+ 
+ You should have received a copy of the GNU Lesser General Public License
+ along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.walkers;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+
+import org.apache.commons.io.input.CharSequenceReader;
+import org.walkmod.util.ByteBufferReader;
+
+/**
+ * Adapters to parse buffers with any {@link Parser}. The parsers that
+ * implement {@link BufferParser} receive the buffers as they are. The rest
+ * receive a reader over the buffer, which decodes the bytes as they are read,
+ * so the input is never copied into a string.
+ */
+public final class Parsers {
+
+	private Parsers() {
+	}
+
+	public static <T> T parse(Parser<T> parser, CharBuffer text) throws ParseException {
+		if (parser instanceof BufferParser) {
+			return ((BufferParser<T>) parser).parse(text);
+		}
+		return parser.parse(new CharSequenceReader(text));
+	}
+
+	public static <T> T parse(Parser<T> parser, ByteBuffer bytes, String encoding) throws ParseException {
+		if (parser instanceof BufferParser) {
+			return ((BufferParser<T>) parser).parse(bytes, encoding);
+		}
+		Charset charset = encoding != null ? Charset.forName(encoding) : Charset.defaultCharset();
+		return parser.parse(new ByteBufferReader(bytes, charset));
+	}
+}
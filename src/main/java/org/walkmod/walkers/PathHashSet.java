@@ -0,0 +1,231 @@
+/* 
+  Copyright (C) 2013 Raquel Pau and Albert Coroleu.
+ 
+ Walkmod is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+ 
+ Walkmod is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser General Public License for more details.
+ 
+ You should have received a copy of the GNU Lesser General Public License
+ along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.walkers;
+
+import java.io.File;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Set of visited elements that only keeps a 64-bit hash of the absolute path
+ * of the visited files, so it does not hold the files (nor anything they
+ * reference) and grows by 8 bytes per file. The rest of elements are tracked
+ * with a {@link WeakIdentitySet}.
+ * 
+ * Unlike a {@link java.util.HashSet}, the elements are not compared with
+ * <code>equals</code>: two files are the same element if their absolute paths
+ * are equal (e.g. a relative and an absolute file of the same path) and the
+ * rest of elements are compared by identity. Since the files are not kept,
+ * the set can not be iterated (neither with {@link #iterator()} nor with
+ * {@link #toArray()}), but the rest of operations are supported and the set
+ * is only equal to itself.
+ */
+final class PathHashSet extends AbstractSet<Object> {
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private long[] table = new long[64];
+
+	private int size = 0;
+
+	private boolean containsZero = false;
+
+	private final Set<Object> others = new WeakIdentitySet();
+
+	@Override
+	public boolean add(Object element) {
+		if (element instanceof File) {
+			return addHash(hash((File) element));
+		}
+		return others.add(element);
+	}
+
+	@Override
+	public boolean contains(Object element) {
+		if (element instanceof File) {
+			long hash = hash((File) element);
+			if (hash == 0) {
+				return containsZero;
+			}
+			return table[indexOf(table, hash)] == hash;
+		}
+		return others.contains(element);
+	}
+
+	@Override
+	public int size() {
+		return size + others.size();
+	}
+
+	@Override
+	public void clear() {
+		table = new long[64];
+		size = 0;
+		containsZero = false;
+		others.clear();
+	}
+
+	@Override
+	public boolean remove(Object element) {
+		if (element instanceof File) {
+			return removeHash(hash((File) element));
+		}
+		return others.remove(element);
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> c) {
+		for (Object element : c) {
+			if (!contains(element)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		boolean changed = false;
+		for (Object element : c) {
+			changed = remove(element) || changed;
+		}
+		return changed;
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		PathHashSet retained = new PathHashSet();
+		for (Object element : c) {
+			if (element instanceof File && contains(element)) {
+				retained.add(element);
+			}
+		}
+		boolean changed = retained.size != size;
+		table = retained.table;
+		size = retained.size;
+		containsZero = retained.containsZero;
+		return others.retainAll(c) || changed;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o == this;
+	}
+
+	@Override
+	public int hashCode() {
+		return System.identityHashCode(this);
+	}
+
+	@Override
+	public String toString() {
+		return "[" + size() + " visited elements]";
+	}
+
+	@Override
+	public Iterator<Object> iterator() {
+		throw new UnsupportedOperationException("The visited files are only kept as path hashes");
+	}
+
+	private boolean addHash(long hash) {
+		if (hash == 0) {
+			if (containsZero) {
+				return false;
+			}
+			containsZero = true;
+			size++;
+			return true;
+		}
+		int index = indexOf(table, hash);
+		if (table[index] == hash) {
+			return false;
+		}
+		table[index] = hash;
+		size++;
+		if (size * 2 > table.length) {
+			rehash();
+		}
+		return true;
+	}
+
+	private boolean removeHash(long hash) {
+		if (hash == 0) {
+			if (!containsZero) {
+				return false;
+			}
+			containsZero = false;
+			size--;
+			return true;
+		}
+		int index = indexOf(table, hash);
+		if (table[index] != hash) {
+			return false;
+		}
+		// the next hashes of the cluster are shifted back, so their probes do
+		// not stop at the removed one
+		int mask = table.length - 1;
+		int gap = index;
+		int i = (gap + 1) & mask;
+		while (table[i] != 0) {
+			int home = slot(table[i], mask);
+			if (((i - home) & mask) >= ((i - gap) & mask)) {
+				table[gap] = table[i];
+				gap = i;
+			}
+			i = (i + 1) & mask;
+		}
+		table[gap] = 0;
+		size--;
+		return true;
+	}
+
+	private void rehash() {
+		long[] bigger = new long[table.length * 2];
+		for (int i = 0; i < table.length; i++) {
+			if (table[i] != 0) {
+				bigger[indexOf(bigger, table[i])] = table[i];
+			}
+		}
+		table = bigger;
+	}
+
+	private static int indexOf(long[] table, long hash) {
+		int mask = table.length - 1;
+		int index = slot(hash, mask);
+		while (table[index] != 0 && table[index] != hash) {
+			index = (index + 1) & mask;
+		}
+		return index;
+	}
+
+	private static int slot(long hash, int mask) {
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+
+	private static long hash(File file) {
+		String path = file.getAbsolutePath();
+		long hash = FNV_OFFSET;
+		for (int i = 0; i < path.length(); i++) {
+			hash ^= path.charAt(i);
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
+}
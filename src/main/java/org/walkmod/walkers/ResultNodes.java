@@ -0,0 +1,354 @@
+/* 
+  Copyright (C) 2013 Raquel Pau and Albert Coroleu.
+ 
+ Walkmod is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+ 
+ Walkmod is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser General Public License for more details.
+ 
+ You should have received a copy of the GNU Lesser General Public License
+ along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.walkers;
+
+import java.util.AbstractCollection;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Insertion ordered set of result nodes where two nodes are the same node
+ * only if they are the same instance. Adding a node that already belongs to
+ * the set moves it to the end, as the visitors expect. Null nodes (e.g. the
+ * result of a merge without a previous node) are not added, since there is
+ * nothing to write. Adding and removing a node does not depend on the number
+ * of result nodes. The nodes are also
+ * linked by class and, within a class, by their {@link IdentityKeyNode} key,
+ * so that the merge of a node only visits the result nodes that can be
+ * identical to it.
+ */
+final class ResultNodes extends AbstractCollection<Object> {
+
+	private static final int ALL = 0;
+
+	private static final int BY_TYPE = 1;
+
+	private static final int BY_KEY = 2;
+
+	private final Map<Object, Entry> index = new IdentityHashMap<Object, Entry>();
+
+	private final Map<Class<?>, Bucket> buckets = new HashMap<Class<?>, Bucket>();
+
+	private Entry head;
+
+	private Entry tail;
+
+	private int modCount = 0;
+
+	private List<Object> snapshot;
+
+	private List<Object> list;
+
+	@Override
+	public boolean add(Object node) {
+		if (node == null) {
+			return false;
+		}
+		Entry entry = index.get(node);
+		if (entry != null) {
+			if (entry == tail) {
+				return true;
+			}
+			unlink(entry);
+		} else {
+			entry = new Entry(node);
+			index.put(node, entry);
+		}
+		link(entry);
+		modified();
+		return true;
+	}
+
+	@Override
+	public boolean remove(Object node) {
+		Entry entry = index.remove(node);
+		if (entry == null) {
+			return false;
+		}
+		unlink(entry);
+		modified();
+		return true;
+	}
+
+	@Override
+	public boolean contains(Object node) {
+		return index.containsKey(node);
+	}
+
+	@Override
+	public int size() {
+		return index.size();
+	}
+
+	@Override
+	public void clear() {
+		index.clear();
+		buckets.clear();
+		head = null;
+		tail = null;
+		modified();
+	}
+
+	@Override
+	public Iterator<Object> iterator() {
+		return new EntryIterator(head, ALL);
+	}
+
+	/**
+	 * Returns an iterator over the result nodes whose class is exactly the
+	 * given one, in insertion order.
+	 */
+	public Iterator<Object> iterator(Class<?> type) {
+		Bucket bucket = buckets.get(type);
+		return new EntryIterator(bucket != null ? bucket.head : null, BY_TYPE);
+	}
+
+	/**
+	 * Returns an iterator over the result nodes whose class is exactly the
+	 * given one and whose {@link IdentityKeyNode} key is equal to the given
+	 * one, in insertion order.
+	 */
+	public Iterator<Object> iterator(Class<?> type, Object key) {
+		Bucket bucket = buckets.get(type);
+		Bucket keyBucket = bucket != null && bucket.keys != null ? bucket.keys.get(key) : null;
+		return new EntryIterator(keyBucket != null ? keyBucket.head : null, BY_KEY);
+	}
+
+	/**
+	 * Returns an immutable copy of the result nodes. The copy is reused until
+	 * the set is modified again.
+	 */
+	public List<Object> view() {
+		if (snapshot == null) {
+			snapshot = Collections.unmodifiableList(Arrays.asList(toArray()));
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Returns a read-only list of the result nodes that reflects the later
+	 * changes of the set.
+	 */
+	public List<Object> asList() {
+		if (list == null) {
+			list = new AbstractList<Object>() {
+
+				@Override
+				public Object get(int index) {
+					return view().get(index);
+				}
+
+				@Override
+				public int size() {
+					return ResultNodes.this.size();
+				}
+			};
+		}
+		return list;
+	}
+
+	private void link(Entry entry) {
+		entry.previous = tail;
+		entry.next = null;
+		if (tail == null) {
+			head = entry;
+		} else {
+			tail.next = entry;
+		}
+		tail = entry;
+
+		Class<?> type = entry.node.getClass();
+		Bucket bucket = buckets.get(type);
+		if (bucket == null) {
+			bucket = new Bucket();
+			buckets.put(type, bucket);
+		}
+		entry.previousOfType = bucket.tail;
+		entry.nextOfType = null;
+		if (bucket.tail == null) {
+			bucket.head = entry;
+		} else {
+			bucket.tail.nextOfType = entry;
+		}
+		bucket.tail = entry;
+
+		if (entry.key != null) {
+			if (bucket.keys == null) {
+				bucket.keys = new HashMap<Object, Bucket>();
+			}
+			Bucket keyBucket = bucket.keys.get(entry.key);
+			if (keyBucket == null) {
+				keyBucket = new Bucket();
+				bucket.keys.put(entry.key, keyBucket);
+			}
+			entry.previousOfKey = keyBucket.tail;
+			entry.nextOfKey = null;
+			if (keyBucket.tail == null) {
+				keyBucket.head = entry;
+			} else {
+				keyBucket.tail.nextOfKey = entry;
+			}
+			keyBucket.tail = entry;
+		}
+	}
+
+	private void unlink(Entry entry) {
+		if (entry.previous == null) {
+			head = entry.next;
+		} else {
+			entry.previous.next = entry.next;
+		}
+		if (entry.next == null) {
+			tail = entry.previous;
+		} else {
+			entry.next.previous = entry.previous;
+		}
+
+		Class<?> type = entry.node.getClass();
+		Bucket bucket = buckets.get(type);
+		if (entry.previousOfType == null) {
+			bucket.head = entry.nextOfType;
+		} else {
+			entry.previousOfType.nextOfType = entry.nextOfType;
+		}
+		if (entry.nextOfType == null) {
+			bucket.tail = entry.previousOfType;
+		} else {
+			entry.nextOfType.previousOfType = entry.previousOfType;
+		}
+		if (bucket.head == null) {
+			buckets.remove(type);
+		}
+
+		if (entry.key != null) {
+			Bucket keyBucket = bucket.keys.get(entry.key);
+			if (entry.previousOfKey == null) {
+				keyBucket.head = entry.nextOfKey;
+			} else {
+				entry.previousOfKey.nextOfKey = entry.nextOfKey;
+			}
+			if (entry.nextOfKey == null) {
+				keyBucket.tail = entry.previousOfKey;
+			} else {
+				entry.nextOfKey.previousOfKey = entry.previousOfKey;
+			}
+			if (keyBucket.head == null) {
+				bucket.keys.remove(entry.key);
+			}
+		}
+	}
+
+	private void modified() {
+		modCount++;
+		snapshot = null;
+	}
+
+	private static final class Entry {
+
+		private final Object node;
+
+		// read once, so the node is unlinked from the same key bucket
+		private final Object key;
+
+		private Entry previous;
+
+		private Entry next;
+
+		private Entry previousOfType;
+
+		private Entry nextOfType;
+
+		private Entry previousOfKey;
+
+		private Entry nextOfKey;
+
+		Entry(Object node) {
+			this.node = node;
+			this.key = node instanceof IdentityKeyNode ? ((IdentityKeyNode) node).getIdentityKey() : null;
+		}
+	}
+
+	private static final class Bucket {
+
+		private Entry head;
+
+		private Entry tail;
+
+		// buckets of the nodes of a class by identity key
+		private Map<Object, Bucket> keys;
+	}
+
+	private class EntryIterator implements Iterator<Object> {
+
+		private final int links;
+
+		private Entry next;
+
+		private Entry last = null;
+
+		private int expectedModCount = modCount;
+
+		EntryIterator(Entry first, int links) {
+			this.next = first;
+			this.links = links;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public Object next() {
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			last = next;
+			if (links == BY_KEY) {
+				next = next.nextOfKey;
+			} else if (links == BY_TYPE) {
+				next = next.nextOfType;
+			} else {
+				next = next.next;
+			}
+			return last.node;
+		}
+
+		@Override
+		public void remove() {
+			if (last == null) {
+				throw new IllegalStateException();
+			}
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			ResultNodes.this.remove(last.node);
+			last = null;
+			expectedModCount = modCount;
+		}
+	}
+}
@@ -20,13 +20,16 @@ import java.io.File;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 import org.walkmod.conf.entities.ChainConfig;
 
@@ -38,6 +41,10 @@ public class VisitorContext extends HashMap<String, Object> {
 
 	private ChainConfig ac = null;
 
+	private VisitorContext parent = null;
+
+	private boolean detached = false;
+
 	public VisitorContext() {
 	}
 
@@ -46,15 +53,89 @@ public class VisitorContext extends HashMap<String, Object> {
 		this.ac = ac;
 	}
 
-	public boolean addResultNode(Object node) {
-		Collection<Object> collection = getOrCreateAstResultNodes();
-		Iterator<Object> it = collection.iterator();
-		while (it.hasNext()) {
-			if (it.next() == node) {
-				it.remove();
+	/**
+	 * Creates a context layered over a parent context. The values of the
+	 * parent are read through until a bulk operation (e.g. iterating the
+	 * entries) or a removal of an inherited key needs a local copy of them.
+	 * The new values are always stored in this context, so the parent is
+	 * never modified. The result nodes are not inherited and the visitor
+	 * messages are shared with the parent.
+	 * 
+	 * @param ac
+	 *            chain configuration
+	 * @param parent
+	 *            context to read through
+	 */
+	public VisitorContext(ChainConfig ac, VisitorContext parent) {
+		this(ac);
+		this.parent = parent;
+		if (parent != null) {
+			this.visitorMessages = parent.visitorMessages;
+		}
+	}
+
+	public VisitorContext getParent() {
+		return parent;
+	}
+
+	/**
+	 * Creates a standalone copy of the current values of this context, e.g.
+	 * to be read from another thread while this context keeps changing. The
+	 * result nodes are not copied and the copy has its own visitor messages.
+	 * 
+	 * @return a context that does not depend on this one
+	 */
+	public VisitorContext snapshot() {
+		VisitorContext copy = new VisitorContext(ac);
+		Map<String, Object> values = new HashMap<String, Object>();
+		copyInto(values);
+		values.remove(KEY_AST_RESULT_NODES);
+		copy.putAll(values);
+		return copy;
+	}
+
+	private boolean isLayered() {
+		return parent != null && !detached;
+	}
+
+	private void detach() {
+		if (isLayered()) {
+			Map<String, Object> inherited = new HashMap<String, Object>();
+			parent.copyInto(inherited);
+			inherited.remove(KEY_AST_RESULT_NODES);
+			for (Map.Entry<String, Object> entry : inherited.entrySet()) {
+				if (!super.containsKey(entry.getKey())) {
+					super.put(entry.getKey(), entry.getValue());
+				}
 			}
+			detached = true;
 		}
-		return collection.add(node);
+	}
+
+	private void copyInto(Map<String, Object> target) {
+		if (isLayered()) {
+			parent.copyInto(target);
+			target.remove(KEY_AST_RESULT_NODES);
+		}
+		for (Map.Entry<String, Object> entry : super.entrySet()) {
+			target.put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	public boolean addResultNode(Object node) {
+		return getOrCreateAstResultNodes().add(node);
+	}
+
+	/**
+	 * Removes a result node. Nodes are compared by identity.
+	 * 
+	 * @param node
+	 *            the result node to remove
+	 * @return if the node was a result node
+	 */
+	public boolean removeResultNode(Object node) {
+		ResultNodes result = getAstResultNodeListOrNull();
+		return result != null && result.remove(node);
 	}
 
 	public boolean addAllResultNodes(Collection<Object> nodes) {
@@ -66,23 +147,55 @@ public class VisitorContext extends HashMap<String, Object> {
 		return added;
 	}
 
-	private Collection<Object> getOrCreateAstResultNodes() {
-		Collection<Object> result = getAstResultNodeListOrNull();
+	private ResultNodes getOrCreateAstResultNodes() {
+		ResultNodes result = getAstResultNodeListOrNull();
 		if (result == null) {
-			result = new LinkedList<Object>();
+			result = new ResultNodes();
 			super.put(KEY_AST_RESULT_NODES, result);
 		}
 		return result;
 	}
 
-	@SuppressWarnings("unchecked")
-	private Collection<Object> getAstResultNodeListOrNull() {
-		return (Collection<Object>) super.get(KEY_AST_RESULT_NODES);
+	private ResultNodes getAstResultNodeListOrNull() {
+		return (ResultNodes) super.get(KEY_AST_RESULT_NODES);
+	}
+
+	/**
+	 * Returns the value of a key, reading through the parent context. The
+	 * value of the <code>result</code> key is a read-only list of the result
+	 * nodes.
+	 */
+	@Override
+	public Object get(Object key) {
+		if (KEY_AST_RESULT_NODES.equals(key)) {
+			ResultNodes result = getAstResultNodeListOrNull();
+			return result != null ? result.asList() : null;
+		}
+		if (isLayered() && !super.containsKey(key)) {
+			return parent.get(key);
+		}
+		return super.get(key);
+	}
+
+	@Override
+	public Object getOrDefault(Object key, Object defaultValue) {
+		return containsKey(key) ? get(key) : defaultValue;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		if (super.containsKey(key)) {
+			return true;
+		}
+		return isLayered() && !KEY_AST_RESULT_NODES.equals(key) && parent.containsKey(key);
 	}
 
 	@Override
 	public Object remove(Object key) {
 		if (!KEY_AST_RESULT_NODES.equals(key)) {
+			if (isLayered() && parent.containsKey(key)) {
+				detach();
+			}
 			return super.remove(key);
 		}
 		return null;
@@ -91,21 +204,260 @@ public class VisitorContext extends HashMap<String, Object> {
 	@Override
 	public Object put(String key, Object value) {
 		if (!KEY_AST_RESULT_NODES.equals(key)) {
-			return super.put(key, value);
+			boolean local = super.containsKey(key);
+			Object previous = super.put(key, value);
+			if (!local && isLayered()) {
+				previous = parent.get(key);
+			}
+			return previous;
+		}
+		return null;
+	}
+
+	@Override
+	public void putAll(Map<? extends String, ? extends Object> m) {
+		for (Map.Entry<? extends String, ? extends Object> entry : m.entrySet()) {
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/*
+	 * The default methods of Map are overridden by HashMap without calling the
+	 * methods above, so they are implemented with them to read through the
+	 * parent context and to keep the result nodes read-only.
+	 */
+
+	@Override
+	public Object putIfAbsent(String key, Object value) {
+		Object current = get(key);
+		if (current == null) {
+			current = put(key, value);
+		}
+		return current;
+	}
+
+	@Override
+	public boolean remove(Object key, Object value) {
+		if (!KEY_AST_RESULT_NODES.equals(key) && containsKey(key) && equal(get(key), value)) {
+			remove(key);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public Object replace(String key, Object value) {
+		if (!KEY_AST_RESULT_NODES.equals(key) && containsKey(key)) {
+			return put(key, value);
 		}
 		return null;
 	}
 
-	@SuppressWarnings("unchecked")
+	@Override
+	public boolean replace(String key, Object oldValue, Object newValue) {
+		if (!KEY_AST_RESULT_NODES.equals(key) && containsKey(key) && equal(get(key), oldValue)) {
+			put(key, newValue);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public Object computeIfAbsent(String key, Function<? super String, ? extends Object> mappingFunction) {
+		Object value = get(key);
+		if (value == null && !KEY_AST_RESULT_NODES.equals(key)) {
+			value = mappingFunction.apply(key);
+			if (value != null) {
+				put(key, value);
+			}
+		}
+		return value;
+	}
+
+	@Override
+	public Object computeIfPresent(String key,
+			BiFunction<? super String, ? super Object, ? extends Object> remappingFunction) {
+		Object value = get(key);
+		if (value != null && !KEY_AST_RESULT_NODES.equals(key)) {
+			value = remappingFunction.apply(key, value);
+			if (value != null) {
+				put(key, value);
+			} else {
+				remove(key);
+			}
+		}
+		return value;
+	}
+
+	@Override
+	public Object compute(String key, BiFunction<? super String, ? super Object, ? extends Object> remappingFunction) {
+		Object value = get(key);
+		if (!KEY_AST_RESULT_NODES.equals(key)) {
+			value = remappingFunction.apply(key, value);
+			if (value != null) {
+				put(key, value);
+			} else {
+				remove(key);
+			}
+		}
+		return value;
+	}
+
+	@Override
+	public Object merge(String key, Object value,
+			BiFunction<? super Object, ? super Object, ? extends Object> remappingFunction) {
+		if (value == null || remappingFunction == null) {
+			throw new NullPointerException();
+		}
+		Object current = get(key);
+		if (!KEY_AST_RESULT_NODES.equals(key)) {
+			current = current == null ? value : remappingFunction.apply(current, value);
+			if (current != null) {
+				put(key, current);
+			} else {
+				remove(key);
+			}
+		}
+		return current;
+	}
+
+	@Override
+	public void forEach(BiConsumer<? super String, ? super Object> action) {
+		for (String key : keySet()) {
+			action.accept(key, get(key));
+		}
+	}
+
+	@Override
+	public void replaceAll(BiFunction<? super String, ? super Object, ? extends Object> function) {
+		detach();
+		for (Map.Entry<String, Object> entry : super.entrySet()) {
+			if (!KEY_AST_RESULT_NODES.equals(entry.getKey())) {
+				entry.setValue(function.apply(entry.getKey(), entry.getValue()));
+			}
+		}
+	}
+
+	/**
+	 * Returns a shallow copy with the values of the parent context, which does
+	 * not depend on it.
+	 */
+	@Override
+	public Object clone() {
+		detach();
+		return super.clone();
+	}
+
+	private static boolean equal(Object a, Object b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	@Override
+	public boolean containsValue(Object value) {
+		detach();
+		return super.containsValue(value);
+	}
+
+	@Override
+	public int size() {
+		detach();
+		return super.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		detach();
+		return super.isEmpty();
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		detached = parent != null;
+	}
+
+	@Override
+	public Set<String> keySet() {
+		detach();
+		return super.keySet();
+	}
+
+	@Override
+	public Collection<Object> values() {
+		detach();
+		return super.values();
+	}
+
+	@Override
+	public Set<Map.Entry<String, Object>> entrySet() {
+		detach();
+		return super.entrySet();
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		detach();
+		return super.equals(o);
+	}
+
+	@Override
+	public int hashCode() {
+		detach();
+		return super.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		detach();
+		return super.toString();
+	}
+
+	/**
+	 * Returns a read-only copy of the result nodes in insertion order. The
+	 * copy is shared by the successive calls until the result nodes change.
+	 * 
+	 * @return the result nodes
+	 */
 	public Collection<Object> getResultNodes() {
-		Collection<Object> result = getAstResultNodeListOrNull();
-		return result != null
-				? Collections.unmodifiableCollection(new ArrayList<Object>(result))
-				: Collections.EMPTY_LIST;
+		ResultNodes result = getAstResultNodeListOrNull();
+		if (result != null) {
+			return result.view();
+		}
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Returns an iterator over the current result nodes, without copying them,
+	 * to look up the nodes that must be merged. Removing a node with the
+	 * iterator removes it from the result nodes.
+	 * 
+	 * @param type
+	 *            the exact class of the nodes to visit or null to visit all of
+	 *            them
+	 */
+	Iterator<Object> getResultNodesIterator(Class<?> type) {
+		ResultNodes result = getAstResultNodeListOrNull();
+		if (result == null) {
+			return Collections.emptyList().iterator();
+		}
+		return type != null ? result.iterator(type) : result.iterator();
+	}
+
+	/**
+	 * Returns an iterator over the current result nodes of a class with the
+	 * given {@link IdentityKeyNode} key, without copying them. Removing a node
+	 * with the iterator removes it from the result nodes.
+	 */
+	Iterator<Object> getResultNodesIterator(Class<?> type, Object key) {
+		ResultNodes result = getAstResultNodeListOrNull();
+		if (result == null) {
+			return Collections.emptyList().iterator();
+		}
+		return result.iterator(type, key);
 	}
 
 	public boolean hasResultNodes() {
-		Collection<Object> result = getAstResultNodeListOrNull();
+		ResultNodes result = getAstResultNodeListOrNull();
 		return result != null && !result.isEmpty();
 	}
 
@@ -0,0 +1,116 @@
+/* 
+  Copyright (C) 2013 Raquel Pau and Albert Coroleu.
+ 
+ Walkmod is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+ 
+ Walkmod is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser General Public License for more details.
+ 
+ You should have received a copy of the GNU Lesser General Public License
+ along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.walkers;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.AbstractSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Set that compares its elements by identity and does not prevent them from
+ * being garbage collected. The elements are released by the set as soon as
+ * the walker no longer references them.
+ */
+final class WeakIdentitySet extends AbstractSet<Object> {
+
+	private final Set<Key> keys = new HashSet<Key>();
+
+	private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+
+	@Override
+	public boolean add(Object element) {
+		expunge();
+		return keys.add(new Key(element, queue));
+	}
+
+	@Override
+	public boolean contains(Object element) {
+		expunge();
+		return keys.contains(new Key(element, null));
+	}
+
+	@Override
+	public boolean remove(Object element) {
+		expunge();
+		return keys.remove(new Key(element, null));
+	}
+
+	@Override
+	public int size() {
+		expunge();
+		return keys.size();
+	}
+
+	@Override
+	public void clear() {
+		keys.clear();
+		while (queue.poll() != null) {
+		}
+	}
+
+	@Override
+	public Iterator<Object> iterator() {
+		expunge();
+		List<Object> elements = new LinkedList<Object>();
+		for (Key key : keys) {
+			Object element = key.get();
+			if (element != null) {
+				elements.add(element);
+			}
+		}
+		return elements.iterator();
+	}
+
+	private void expunge() {
+		Reference<?> ref;
+		while ((ref = queue.poll()) != null) {
+			keys.remove(ref);
+		}
+	}
+
+	private static final class Key extends WeakReference<Object> {
+
+		private final int hash;
+
+		Key(Object element, ReferenceQueue<Object> queue) {
+			super(element, queue);
+			hash = System.identityHashCode(element);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Object element = get();
+			return element != null && element == ((Key) o).get();
+		}
+	}
+}
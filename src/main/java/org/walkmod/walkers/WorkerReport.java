@@ -0,0 +1,157 @@
+/* 
+  Copyright (C) 2013 Raquel Pau and Albert Coroleu.
+ 
+ Walkmod is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+ 
+ Walkmod is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser General Public License for more details.
+ 
+ You should have received a copy of the GNU Lesser General Public License
+ along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.walkers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Timings of the resource elements walked by each worker of a parallel
+ * execution. It shows how long each worker has been busy and when it finished
+ * with respect to the others, which exposes the workers that are left alone at
+ * the end (e.g. with a large generated file).
+ */
+public class WorkerReport {
+
+	private final long start = System.nanoTime();
+
+	private long end = 0;
+
+	private final Map<String, Worker> workers = new LinkedHashMap<String, Worker>();
+
+	private final List<Long> latencies = new ArrayList<Long>();
+
+	synchronized void record(String worker, long startNanos, long endNanos, long size) {
+		Worker w = workers.get(worker);
+		if (w == null) {
+			w = new Worker(worker);
+			workers.put(worker, w);
+		}
+		w.elements++;
+		w.bytes += size;
+		w.busy += endNanos - startNanos;
+		w.slowest = Math.max(w.slowest, endNanos - startNanos);
+		w.finished = Math.max(w.finished, endNanos - start);
+		latencies.add(endNanos - startNanos);
+	}
+
+	synchronized void finish() {
+		end = System.nanoTime() - start;
+	}
+
+	public synchronized List<Worker> getWorkers() {
+		return new ArrayList<Worker>(workers.values());
+	}
+
+	/**
+	 * Returns the time between the first and the last worker finishing, that
+	 * is, how long the slowest worker has run alone.
+	 */
+	public synchronized long getTailMillis() {
+		if (workers.isEmpty()) {
+			return 0;
+		}
+		long first = Long.MAX_VALUE;
+		long last = 0;
+		for (Worker w : workers.values()) {
+			first = Math.min(first, w.finished);
+			last = Math.max(last, w.finished);
+		}
+		return (last - first) / 1000000;
+	}
+
+	/**
+	 * Returns the walk time of an element for a percentile between 0 and 100.
+	 */
+	public synchronized long getLatencyMillis(double percentile) {
+		if (latencies.isEmpty()) {
+			return 0;
+		}
+		List<Long> sorted = new ArrayList<Long>(latencies);
+		Collections.sort(sorted);
+		int index = (int) Math.ceil(percentile / 100 * sorted.size()) - 1;
+		return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1))) / 1000000;
+	}
+
+	@Override
+	public synchronized String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("[workers] ").append(latencies.size()).append(" elements in ").append(end / 1000000)
+				.append(" ms, p50 ").append(getLatencyMillis(50)).append(" ms, p95 ").append(getLatencyMillis(95))
+				.append(" ms, max ").append(getLatencyMillis(100)).append(" ms, tail ").append(getTailMillis())
+				.append(" ms");
+		for (Worker w : workers.values()) {
+			sb.append("\n").append(w);
+		}
+		return sb.toString();
+	}
+
+	public static class Worker {
+
+		private final String name;
+
+		private int elements = 0;
+
+		private long bytes = 0;
+
+		private long busy = 0;
+
+		private long slowest = 0;
+
+		private long finished = 0;
+
+		Worker(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getElements() {
+			return elements;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+
+		public long getBusyMillis() {
+			return busy / 1000000;
+		}
+
+		public long getSlowestMillis() {
+			return slowest / 1000000;
+		}
+
+		/**
+		 * Returns when the worker finished its last element, since the start
+		 * of the execution.
+		 */
+		public long getFinishedMillis() {
+			return finished / 1000000;
+		}
+
+		@Override
+		public String toString() {
+			return "[" + name + "] " + elements + " elements (" + bytes + " bytes), busy " + getBusyMillis()
+					+ " ms, slowest " + getSlowestMillis() + " ms, finished at " + getFinishedMillis() + " ms";
+		}
+	}
+}
@@ -0,0 +1,108 @@
+/* 
+  Copyright (C) 2013 Raquel Pau and Albert Coroleu.
+ 
+ Walkmod is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+ 
+ Walkmod is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser General Public License for more details.
+ 
+ You should have received a copy of the GNU Lesser General Public License
+ along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.walkers;
+
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The <code>write</code> overloads of a writer class, grouped by the class of
+ * the written elements. A plan is built once per writer class and every
+ * element class is resolved the first time that one of its instances is
+ * written. Like the {@link DispatchTable}, the plans are weakly keyed by the
+ * writer class and softly referenced, so they do not keep the writer classes
+ * of the plugins.
+ */
+public final class WriterDispatchPlan {
+
+	private static final Map<Class<?>, Reference<WriterDispatchPlan>> PLANS = Collections
+			.synchronizedMap(new WeakHashMap<Class<?>, Reference<WriterDispatchPlan>>());
+
+	private static final DispatchTable.Target[] EMPTY = new DispatchTable.Target[0];
+
+	private final Method[] writeMethods;
+
+	private final Class<?>[] writeTypes;
+
+	private final int[] paramsLengths;
+
+	private final ConcurrentMap<Class<?>, DispatchTable.Target[]> targets = new ConcurrentHashMap<Class<?>, DispatchTable.Target[]>();
+
+	private WriterDispatchPlan(Class<?> writerType) {
+		List<Method> methods = new ArrayList<Method>();
+		Method[] all = writerType.getMethods();
+		for (int i = 0; i < all.length; i++) {
+			if (all[i].getName().equals("write") && all[i].getParameterTypes().length > 0) {
+				methods.add(all[i]);
+			}
+		}
+		writeMethods = methods.toArray(new Method[methods.size()]);
+		writeTypes = new Class<?>[writeMethods.length];
+		paramsLengths = new int[writeMethods.length];
+		for (int i = 0; i < writeMethods.length; i++) {
+			Class<?>[] params = writeMethods[i].getParameterTypes();
+			writeTypes[i] = params[0];
+			paramsLengths[i] = params.length;
+		}
+	}
+
+	public static WriterDispatchPlan forWriter(Class<?> writerType) {
+		synchronized (PLANS) {
+			Reference<WriterDispatchPlan> ref = PLANS.get(writerType);
+			WriterDispatchPlan plan = ref != null ? ref.get() : null;
+			if (plan == null) {
+				plan = new WriterDispatchPlan(writerType);
+				PLANS.put(writerType, new SoftReference<WriterDispatchPlan>(plan));
+			}
+			return plan;
+		}
+	}
+
+	/**
+	 * Returns the <code>write</code> overloads that accept the element class,
+	 * in the same order in which they are declared by the writer class.
+	 */
+	public DispatchTable.Target[] getWriteMethods(Class<?> elementType) {
+		DispatchTable.Target[] result = targets.get(elementType);
+		if (result == null) {
+			List<DispatchTable.Target> aux = new ArrayList<DispatchTable.Target>();
+			for (int i = 0; i < writeMethods.length; i++) {
+				if (writeTypes[i].isAssignableFrom(elementType)) {
+					aux.add(new DispatchTable.Target(writeMethods[i], paramsLengths[i]));
+				}
+			}
+			result = aux.isEmpty() ? EMPTY : aux.toArray(new DispatchTable.Target[aux.size()]);
+			targets.putIfAbsent(elementType, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Removes all the plans. Useful when the plugin classes are reloaded with
+	 * a new class loader.
+	 */
+	public static void clear() {
+		PLANS.clear();
+	}
+}
@@ -16,15 +16,29 @@
 
 package org.walkmod.writers;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.io.StringReader;
+import java.io.RandomAccessFile;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.commons.io.FilenameUtils;
 import org.apache.log4j.Logger;
@@ -52,6 +66,32 @@ public abstract class AbstractFileWriter implements ChainWriter {
     
     private boolean createdEmptyFile = false;
 
+    private static final String STAGED_SUFFIX = ".walkmod-staged";
+
+    private static final String BACKUP_SUFFIX = ".walkmod-backup";
+
+    private boolean transactional = false;
+
+    private int syncBatchSize = 64;
+
+    /**
+     * Staged (temporary) file of each written file in transactional mode
+     */
+    private final Map<File, File> stagedFiles = new LinkedHashMap<File, File>();
+
+    private final List<File> unsyncedFiles = new ArrayList<File>();
+
+    /**
+     * Staged files replaced by a later write, which are deleted at the end of the transaction
+     */
+    private final List<File> obsoleteFiles = new ArrayList<File>();
+
+    private final List<Future<Void>> syncs = new ArrayList<Future<Void>>();
+
+    private ExecutorService syncer;
+
+    private Boolean writerOverridden;
+
     private static Logger log = Logger.getLogger(AbstractFileWriter.class);
 
     public void setOutputDirectory(String outputDirectory) {
@@ -105,8 +145,457 @@ public abstract class AbstractFileWriter implements ChainWriter {
         return vc.get("append") == null || !Boolean.TRUE.equals(vc.get("append"));   
     }
     
+    /**
+     * Returns the writer of a file. The contents are written into the stream of
+     * {@link #getOutputStream(File)}, unless a subclass overrides this method: then the
+     * changed contents are written with the returned writer, as before.
+     */
     protected Writer getWriter(File out) throws Exception{
-        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(out), getEncoding()));
+        return new BufferedWriter(new OutputStreamWriter(getOutputStream(out), getEncoding()));
+    }
+
+    private boolean isWriterOverridden() {
+        if (writerOverridden == null) {
+            boolean overridden = false;
+            Class<?> type = getClass();
+            while (!overridden && type != AbstractFileWriter.class) {
+                try {
+                    type.getDeclaredMethod("getWriter", File.class);
+                    overridden = true;
+                } catch (NoSuchMethodException e) {
+                    type = type.getSuperclass();
+                }
+            }
+            writerOverridden = overridden;
+        }
+        return writerOverridden;
+    }
+
+    /**
+     * Returns the stream where the encoded content of a file is written. In transactional
+     * mode, it is the stream of its staged file.
+     */
+    protected OutputStream getOutputStream(File out) throws Exception {
+        if (transactional) {
+            return new StagedOutputStream(stage(out));
+        }
+        return new FileOutputStream(out);
+    }
+
+    public boolean isTransactional() {
+        return transactional;
+    }
+
+    /**
+     * Sets if the files are written in a transaction: the contents are written into
+     * temporary files of the same directories, which are synced to disk in batches by a
+     * background thread while the next files are written, and renamed to the written files
+     * by {@link #commit()} (i.e. when the writer is flushed at the end of the chain). If the
+     * chain fails, {@link #rollback()} discards them, so the sources are never left
+     * half-transformed. The files left by an interrupted transaction are recovered with
+     * {@link #recover()} when the chain starts.
+     */
+    public void setTransactional(boolean transactional) {
+        this.transactional = transactional;
+    }
+
+    public int getSyncBatchSize() {
+        return syncBatchSize;
+    }
+
+    /**
+     * Sets the number of written staged files that are synced to disk together.
+     */
+    public void setSyncBatchSize(int syncBatchSize) {
+        if (syncBatchSize < 1) {
+            throw new IllegalArgumentException("The sync batch size must be greater than 0");
+        }
+        this.syncBatchSize = syncBatchSize;
+    }
+
+    private File stage(File out) throws IOException {
+        File target = out.getAbsoluteFile();
+        File dir = target.getParentFile();
+        if (dir != null && !dir.exists()) {
+            dir.mkdirs();
+        }
+        File staged = File.createTempFile("." + target.getName() + ".", STAGED_SUFFIX, dir);
+        synchronized (stagedFiles) {
+            File previous = stagedFiles.put(target, staged);
+            if (previous != null) {
+                // it may be being synced, so it is deleted at the end of the transaction
+                unsyncedFiles.remove(previous);
+                obsoleteFiles.add(previous);
+            }
+        }
+        return staged;
+    }
+
+    /**
+     * Returns the staged file of a written file or null if it has not been written in
+     * the current transaction.
+     */
+    protected File getStagedFile(File out) {
+        synchronized (stagedFiles) {
+            return stagedFiles.get(out.getAbsoluteFile());
+        }
+    }
+
+    private void written(File staged) {
+        synchronized (stagedFiles) {
+            if (stagedFiles.containsValue(staged)) {
+                unsyncedFiles.add(staged);
+                if (unsyncedFiles.size() >= syncBatchSize) {
+                    submitSync();
+                }
+            }
+        }
+    }
+
+    /**
+     * Syncs the written staged files in a background thread, so the walker does not wait
+     * for the disk. It is called holding the lock of the staged files.
+     */
+    private void submitSync() {
+        if (unsyncedFiles.isEmpty()) {
+            return;
+        }
+        final List<File> batch = new ArrayList<File>(unsyncedFiles);
+        unsyncedFiles.clear();
+        if (syncer == null) {
+            syncer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "walkmod-sync");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        syncs.add(syncer.submit(new Callable<Void>() {
+
+            @Override
+            public Void call() throws IOException {
+                sync(batch);
+                return null;
+            }
+        }));
+    }
+
+    /**
+     * Waits until the submitted staged files have been synced and stops the sync thread.
+     * 
+     * @throws IOException
+     *             if some staged file can not be synced
+     */
+    private void awaitSyncs() throws IOException {
+        List<Future<Void>> pending;
+        ExecutorService executor;
+        synchronized (stagedFiles) {
+            pending = new ArrayList<Future<Void>>(syncs);
+            syncs.clear();
+            executor = syncer;
+            syncer = null;
+        }
+        IOException failure = null;
+        try {
+            for (Future<Void> sync : pending) {
+                try {
+                    sync.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        Throwable cause = e.getCause();
+                        failure = cause instanceof IOException ? (IOException) cause : new IOException(
+                                "Unable to sync the staged files", cause);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while syncing the staged files");
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static void sync(List<File> files) throws IOException {
+        for (File file : files) {
+            if (file.exists()) {
+                RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                try {
+                    raf.getFD().sync();
+                } finally {
+                    raf.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the permissions of a replaced file to its staged file, which has been created
+     * with the default ones. Only the permissions that can be checked are copied: if the
+     * file is executable, the staged file becomes executable and if it is read-only, the
+     * staged file becomes read-only.
+     */
+    private static void copyPermissions(File target, File staged) {
+        if (target.exists()) {
+            if (target.canExecute()) {
+                staged.setExecutable(true, false);
+            }
+            if (!target.canWrite()) {
+                staged.setWritable(false, false);
+            }
+        }
+    }
+
+    /**
+     * Replaces the written files by their staged contents. The staged files that have not
+     * been synced yet are synced first. Each original file is kept as a backup until all
+     * the staged files have been renamed, so if a rename fails, the files that have been
+     * already replaced are restored and the staged files are discarded. If the process is
+     * killed meanwhile, {@link #recover()} restores them.
+     * 
+     * @throws IOException
+     *             if the files can not be replaced. The original files are kept.
+     */
+    public void commit() throws IOException {
+        Map<File, File> files;
+        synchronized (stagedFiles) {
+            submitSync();
+            files = new LinkedHashMap<File, File>(stagedFiles);
+            stagedFiles.clear();
+        }
+        List<File> replaced = new ArrayList<File>(files.size());
+        List<File> backups = new ArrayList<File>(files.size());
+        boolean committed = false;
+        try {
+            awaitSyncs();
+            for (Map.Entry<File, File> entry : files.entrySet()) {
+                File target = entry.getKey();
+                File staged = entry.getValue();
+                copyPermissions(target, staged);
+                File backup = null;
+                if (target.exists()) {
+                    backup = getBackupFile(target);
+                    if (backup.exists()) {
+                        backup.delete();
+                    }
+                    if (!target.renameTo(backup)) {
+                        throw new IOException("Unable to replace " + target.getPath());
+                    }
+                }
+                if (!staged.renameTo(target)) {
+                    if (backup != null) {
+                        backup.renameTo(target);
+                    }
+                    throw new IOException("Unable to replace " + target.getPath());
+                }
+                replaced.add(target);
+                backups.add(backup);
+            }
+            committed = true;
+        } finally {
+            if (!committed) {
+                for (int i = replaced.size() - 1; i >= 0; i--) {
+                    File target = replaced.get(i);
+                    target.delete();
+                    if (backups.get(i) != null) {
+                        backups.get(i).renameTo(target);
+                    }
+                }
+                discard(files);
+            }
+            deleteObsoleteFiles();
+        }
+        for (File backup : backups) {
+            if (backup != null) {
+                backup.delete();
+            }
+        }
+        if (!files.isEmpty()) {
+            log.debug(files.size() + " files committed");
+        }
+    }
+
+    /**
+     * Discards the staged files of the current transaction. The written files are not
+     * modified.
+     */
+    public void rollback() {
+        Map<File, File> files;
+        synchronized (stagedFiles) {
+            files = new LinkedHashMap<File, File>(stagedFiles);
+            stagedFiles.clear();
+            unsyncedFiles.clear();
+        }
+        try {
+            awaitSyncs();
+        } catch (IOException e) {
+            log.debug("The discarded files have not been synced: " + e.getMessage());
+        } finally {
+            discard(files);
+            deleteObsoleteFiles();
+        }
+        if (!files.isEmpty()) {
+            log.debug(files.size() + " files rolled back");
+        }
+    }
+
+    private void discard(Map<File, File> files) {
+        if (files.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<File, File> entry : files.entrySet()) {
+            entry.getValue().delete();
+        }
+        List<File> written = Summary.getInstance().getWrittenFiles();
+        synchronized (written) {
+            Iterator<File> it = written.iterator();
+            while (it.hasNext()) {
+                if (files.containsKey(it.next().getAbsoluteFile())) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private void deleteObsoleteFiles() {
+        List<File> files;
+        synchronized (stagedFiles) {
+            files = new ArrayList<File>(obsoleteFiles);
+            obsoleteFiles.clear();
+        }
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    private static File getBackupFile(File target) {
+        return new File(target.getParentFile(), "." + target.getName() + BACKUP_SUFFIX);
+    }
+
+    /**
+     * Recovers the output directory from a transaction that has been interrupted (e.g.
+     * the process has been killed), so it must be called before writing. The staged files
+     * left are deleted. If some staged file is left, the interrupted transaction was not
+     * completely committed, so the files that had been replaced are restored from their
+     * backups. Otherwise, all the files had been replaced and the backups are deleted.
+     * 
+     * @throws IOException
+     *             if a file can not be restored
+     */
+    public void recover() throws IOException {
+        if (outputDirectory == null) {
+            return;
+        }
+        List<File> staged = new ArrayList<File>();
+        List<File> backups = new ArrayList<File>();
+        findTransactionFiles(outputDirectory, staged, backups);
+        boolean restore = !staged.isEmpty();
+        for (File backup : backups) {
+            String name = backup.getName();
+            File target = new File(backup.getParentFile(), name.substring(1, name.length() - BACKUP_SUFFIX.length()));
+            if (restore || !target.exists()) {
+                if (target.exists()) {
+                    target.delete();
+                }
+                if (!backup.renameTo(target)) {
+                    throw new IOException("Unable to restore " + target.getPath() + " from " + backup.getPath());
+                }
+                log.warn(target.getPath() + " restored from an interrupted transaction");
+            } else {
+                backup.delete();
+            }
+        }
+        for (File file : staged) {
+            file.delete();
+        }
+    }
+
+    private static void findTransactionFiles(File dir, List<File> staged, List<File> backups) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (file.isDirectory()) {
+                    findTransactionFiles(file, staged, backups);
+                } else if (name.startsWith(".") && name.endsWith(STAGED_SUFFIX)) {
+                    staged.add(file);
+                } else if (name.startsWith(".") && name.endsWith(BACKUP_SUFFIX)
+                        && name.length() > BACKUP_SUFFIX.length() + 1) {
+                    backups.add(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Encoded content that is compared with a file and written without copying it.
+     */
+    protected static class EncodedContent extends ByteArrayOutputStream {
+
+        EncodedContent(int size) {
+            super(size);
+        }
+
+        /**
+         * Returns if a file has exactly the encoded bytes.
+         */
+        public boolean isContentOf(File file) throws IOException {
+            if (!file.isFile() || file.length() != count) {
+                return false;
+            }
+            InputStream is = new FileInputStream(file);
+            try {
+                byte[] aux = new byte[8192];
+                int offset = 0;
+                int read;
+                while ((read = is.read(aux)) != -1) {
+                    if (offset + read > count) {
+                        return false;
+                    }
+                    for (int i = 0; i < read; i++) {
+                        if (aux[i] != buf[offset + i]) {
+                            return false;
+                        }
+                    }
+                    offset += read;
+                }
+                return offset == count;
+            } finally {
+                is.close();
+            }
+        }
+    }
+
+    /**
+     * Notifies the writer when a staged file has been written and closed.
+     */
+    private class StagedOutputStream extends FileOutputStream {
+
+        private final File staged;
+
+        private boolean closed = false;
+
+        StagedOutputStream(File staged) throws IOException {
+            super(staged);
+            this.staged = staged;
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            if (!closed) {
+                closed = true;
+                written(staged);
+            }
+        }
     }
     
     protected File getOutputFile(Object n, VisitorContext vc){
@@ -131,27 +620,17 @@ public abstract class AbstractFileWriter implements ChainWriter {
         if (out != null) {
 
             if (isValid(out)) {
-                Writer writer = null;
-
-                try {
-                    vc.put("outFile", out);
-                    String content = getContent(n, vc);
-                    vc.remove("outFile");
-                    if (content != null && !"".equals(content)) {
-                        char endLineChar = getEndLineChar(out);
-                        writer = getWriter(out);
-                        if (requiresToAppend(vc)) {
-                            append(content, writer, endLineChar); 
-                        } else {
-                            write(content, writer, endLineChar);
-                        }
+                vc.put("outFile", out);
+                String content = getContent(n, vc);
+                vc.remove("outFile");
+                if (content != null && !"".equals(content)) {
+                    char endLineChar = getEndLineChar(out, vc);
+                    if (writeIfChanged(out, content, endLineChar, requiresToAppend(vc))) {
                         Summary.getInstance().addFile(out);
                         log.debug(out.getPath() + " written ");
-                    }
-                } finally {
-                    if (writer != null) {
-                        writer.close();
-
+                    } else {
+                        Summary.getInstance().addSkippedFile(out);
+                        log.debug(out.getPath() + " skipped (unchanged)");
                     }
                 }
             } else {
@@ -165,9 +644,74 @@ public abstract class AbstractFileWriter implements ChainWriter {
         }
     }
 
-    public void write(String content, Writer writer, char endLineChar) throws IOException {
-        char[] buffer = content.toCharArray();
+    /**
+     * Writes the content into a file unless the file already has it, so its modification
+     * time is kept. The content is encoded once: the same bytes are compared with the file
+     * and written into the stream of {@link #getOutputStream(File)}. If a subclass overrides
+     * {@link #getWriter(File)}, the content is written with that writer instead.
+     * 
+     * @param out
+     *            the file to write
+     * @param content
+     *            the content to write
+     * @param endLineChar
+     *            the end of line of the file
+     * @param append
+     *            if the content is written line by line with
+     *            {@link #append(String, Writer, char)}
+     * @return if the file has been written
+     */
+    protected boolean writeIfChanged(File out, String content, char endLineChar, boolean append) throws Exception {
+        EncodedContent encoded = new EncodedContent(content.length() + 64);
+        Writer writer = new OutputStreamWriter(encoded, getEncoding());
+        if (append) {
+            append(content, writer, endLineChar);
+        } else {
+            write(content, writer, endLineChar);
+        }
+        writer.close();
+        if (isUnchanged(out, encoded)) {
+            return false;
+        }
+        if (isWriterOverridden()) {
+            writer = getWriter(out);
+            try {
+                if (append) {
+                    append(content, writer, endLineChar);
+                } else {
+                    write(content, writer, endLineChar);
+                }
+            } finally {
+                writer.close();
+            }
+            return true;
+        }
+        OutputStream os = getOutputStream(out);
+        try {
+            encoded.writeTo(os);
+        } finally {
+            os.close();
+        }
+        return true;
+    }
 
+    /**
+     * Checks if the file (or its staged file in transactional mode) already has the
+     * encoded content. Its length is compared with the file length before comparing the
+     * bytes of the file.
+     * 
+     * @throws IOException
+     *             if the file can not be read
+     */
+    protected boolean isUnchanged(File out, EncodedContent content) throws IOException {
+        File staged = getStagedFile(out);
+        if (staged != null) {
+            out = staged;
+        }
+        return content.isContentOf(out);
+    }
+
+    public void write(String content, Writer writer, char endLineChar) throws IOException {
         String endLine = "\n";
         if (endLineChar == '\r') {
             endLine = "\r\n";
@@ -181,34 +725,77 @@ public abstract class AbstractFileWriter implements ChainWriter {
                 endLine = "\r";
             }
         }
-        for (int i = 0; i < buffer.length; i++) {
-            if (buffer[i] == '\n') {
-                writer.write(endLine);
-            } else if (buffer[i] == '\r') {
-                writer.write(endLine);
-                if (i + 1 < buffer.length && buffer[i + 1] == '\n') {
-                    i++;
-                }
-            } else {
-                writer.write(buffer[i]);
-            }
-        }
-
+        writeLines(content, writer, endLine, false);
     }
 
     public void append(String content, Writer writer, char endLineChar) throws IOException {
-        BufferedReader reader = new BufferedReader(new StringReader(content));
-        String line = reader.readLine();
         String endLine = "\n";
         if (endLineChar == '\r') {
             endLine = "\r\n";
         }
-        while (line != null) {
-            writer.append(line + endLine);
-            line = reader.readLine();
+        writeLines(content, writer, endLine, true);
+    }
+
+    /**
+     * Writes the content replacing its line terminators ("\n", "\r" or
+     * "\r\n") by the given end of line. The text between two terminators is
+     * written as a single slice and, if the content already has the given
+     * end of line, it is written at once.
+     * 
+     * @param terminate
+     *            if the last line must be terminated with the end of line
+     *            (as when the content is appended line by line)
+     */
+    protected static void writeLines(String content, Writer writer, String endLine, boolean terminate)
+            throws IOException {
+        int length = content.length();
+        int start = 0;
+        int i = 0;
+        while (i < length) {
+            char c = content.charAt(i);
+            if (c == '\n' || c == '\r') {
+                int next = i + 1;
+                if (c == '\r' && next < length && content.charAt(next) == '\n') {
+                    next++;
+                }
+                // the terminator is kept in the slice when it is already the end of line
+                if (!content.regionMatches(i, endLine, 0, endLine.length()) || next - i != endLine.length()) {
+                    if (start < i) {
+                        writer.write(content, start, i - start);
+                    }
+                    writer.write(endLine);
+                    start = next;
+                }
+                i = next;
+            } else {
+                i++;
+            }
+        }
+        if (start < length) {
+            writer.write(content, start, length - start);
+        }
+        if (terminate && length > 0) {
+            char last = content.charAt(length - 1);
+            if (last != '\n' && last != '\r') {
+                writer.write(endLine);
+            }
         }
     }
 
+    /**
+     * Returns the end of line of the original file if it has been detected when the file
+     * was read. Otherwise, the file is read.
+     */
+    protected char getEndLineChar(File file, VisitorContext vc) throws IOException {
+        if (vc != null && file.equals(vc.get(AbstractWalker.ORIGINAL_FILE_KEY))) {
+            Object endLine = vc.get(AbstractWalker.ORIGINAL_END_LINE_KEY);
+            if (endLine instanceof Character) {
+                return (Character) endLine;
+            }
+        }
+        return getEndLineChar(file);
+    }
+
     public char getEndLineChar(File file) throws IOException {
         char endLineChar = '\n';
         if (file.exists()) {
@@ -248,10 +835,17 @@ public abstract class AbstractFileWriter implements ChainWriter {
 
     @Override
     public void close() throws IOException {
+        flush();
     }
 
+    /**
+     * Commits the written files in transactional mode.
+     */
     @Override
     public void flush() throws IOException {
+        if (transactional) {
+            commit();
+        }
     }
 
     public void setPath(String path) {
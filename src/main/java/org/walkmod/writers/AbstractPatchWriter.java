@@ -15,11 +15,9 @@
   along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
 package org.walkmod.writers;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
+import java.io.OutputStream;
 
 import org.walkmod.walkers.VisitorContext;
 
@@ -43,9 +41,17 @@ public abstract class AbstractPatchWriter extends AbstractFileWriter {
 		return true;
 	}
 
+	/**
+	 * The patches are appended to another file, so they are always written.
+	 */
 	@Override
-	protected Writer getWriter(File out) throws Exception {
-		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File("walkmod.patch").getCanonicalFile(), true), getEncoding()));
+	protected boolean isUnchanged(File out, EncodedContent content) {
+		return false;
+	}
+
+	@Override
+	protected OutputStream getOutputStream(File out) throws Exception {
+		return new FileOutputStream(new File("walkmod.patch").getCanonicalFile(), true);
 	}
 
 	public void setPatchPerChange(boolean patchPerChange) {
@@ -0,0 +1,379 @@
+/* 
+  Copyright (C) 2013 Raquel Pau and Albert Coroleu.
+ 
+ Walkmod is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+ 
+ Walkmod is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser General Public License for more details.
+ 
+ You should have received a copy of the GNU Lesser General Public License
+ along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.writers;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.log4j.Logger;
+import org.walkmod.ChainWriter;
+import org.walkmod.exceptions.WalkModException;
+import org.walkmod.walkers.AbstractWalker;
+import org.walkmod.walkers.DispatchTable;
+import org.walkmod.walkers.VisitorContext;
+import org.walkmod.walkers.WriterDispatchPlan;
+
+/**
+ * Write-behind decorator of a {@link ChainWriter}: the walker enqueues the
+ * results and dedicated I/O threads write them with the decorated writer, so
+ * the visitors do not wait for the disk. The queues are bounded, so the
+ * walker blocks when the writes fall behind.
+ * 
+ * The results of the same original file are always written by the same
+ * thread and in the same order than they are enqueued. With more than one
+ * thread, the decorated writer must be thread safe.
+ * 
+ * Each result is written with a snapshot of its visitor context taken when
+ * it is enqueued, so the changes of the walker and of the writer do not race.
+ * The messages added by the writer are merged back into the original context
+ * by {@link #flush()} and {@link #close()}, from the calling thread.
+ * 
+ * {@link #flush()} and {@link #close()} wait until all the enqueued results
+ * have been written and report the failed writes with the file that was
+ * being written. After a failure, the next writes are rejected. It is enabled
+ * for a chain with the <code>async</code> writer parameter.
+ */
+public class AsyncChainWriter implements ChainWriter {
+
+	public static final String ASYNC_PARAM = "async";
+
+	public static final String QUEUE_CAPACITY_PARAM = "asyncQueueCapacity";
+
+	public static final String THREADS_PARAM = "asyncThreads";
+
+	public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+	private static final Write STOP = new Write(null, null, null, null);
+
+	private static Logger log = Logger.getLogger(AsyncChainWriter.class);
+
+	private final ChainWriter writer;
+
+	private final int queueCapacity;
+
+	private final int threads;
+
+	private final Object lock = new Object();
+
+	private final List<IOException> failures = new ArrayList<IOException>();
+
+	private final List<Write> messages = new ArrayList<Write>();
+
+	private List<BlockingQueue<Write>> queues;
+
+	private Thread[] workers;
+
+	private int pending = 0;
+
+	private boolean rejected = false;
+
+	public AsyncChainWriter(ChainWriter writer) {
+		this(writer, DEFAULT_QUEUE_CAPACITY, 1);
+	}
+
+	public AsyncChainWriter(ChainWriter writer, int queueCapacity, int threads) {
+		if (queueCapacity < 1) {
+			throw new IllegalArgumentException("The queue capacity must be greater than 0");
+		}
+		if (threads < 1) {
+			throw new IllegalArgumentException("The number of threads must be greater than 0");
+		}
+		this.writer = writer;
+		this.queueCapacity = queueCapacity;
+		this.threads = threads;
+	}
+
+	public ChainWriter getWriter() {
+		return writer;
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	private synchronized void start() {
+		if (workers == null) {
+			queues = new ArrayList<BlockingQueue<Write>>(threads);
+			workers = new Thread[threads];
+			for (int i = 0; i < threads; i++) {
+				final BlockingQueue<Write> queue = new ArrayBlockingQueue<Write>(queueCapacity);
+				queues.add(queue);
+				workers[i] = new Thread(new Runnable() {
+
+					@Override
+					public void run() {
+						consume(queue);
+					}
+				}, "walkmod-writer-" + i);
+				workers[i].setDaemon(true);
+				workers[i].start();
+			}
+		}
+	}
+
+	private void consume(BlockingQueue<Write> queue) {
+		while (true) {
+			Write write;
+			try {
+				write = queue.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+			if (write == STOP) {
+				return;
+			}
+			try {
+				write.run(writer);
+			} catch (Throwable e) {
+				if (e instanceof InvocationTargetException && e.getCause() != null) {
+					e = e.getCause();
+				}
+				IOException failure = new IOException("Error writing " + write.getLocation(), e);
+				synchronized (lock) {
+					failures.add(failure);
+					rejected = true;
+				}
+				log.error(failure.getMessage(), e);
+			} finally {
+				synchronized (lock) {
+					if (write.hasMessages()) {
+						messages.add(write);
+					}
+					pending--;
+					if (pending == 0) {
+						lock.notifyAll();
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public void write(Object n, VisitorContext vc) throws Exception {
+		if (n == null) {
+			return;
+		}
+		synchronized (lock) {
+			if (rejected) {
+				throw new WalkModException("The results are not written after the previous errors",
+						failures.isEmpty() ? null : failures.get(0));
+			}
+			pending++;
+		}
+		start();
+		VisitorContext context = vc == null ? null : vc.snapshot();
+		Write write = new Write(n, context, vc, vc == null ? null : vc.get(AbstractWalker.ORIGINAL_FILE_KEY));
+		int index = write.file == null ? 0 : (write.file.hashCode() & Integer.MAX_VALUE) % threads;
+		try {
+			queues.get(index).put(write);
+		} catch (InterruptedException e) {
+			synchronized (lock) {
+				pending--;
+			}
+			Thread.currentThread().interrupt();
+			throw e;
+		}
+	}
+
+	/**
+	 * Waits until all the enqueued results have been written.
+	 */
+	private void await() throws IOException {
+		synchronized (lock) {
+			while (pending > 0) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while waiting for the writes");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the messages of the written results to their original contexts.
+	 */
+	private void mergeMessages() {
+		List<Write> written;
+		synchronized (lock) {
+			written = new ArrayList<Write>(messages);
+			messages.clear();
+		}
+		for (Write write : written) {
+			write.mergeMessages();
+		}
+	}
+
+	private void throwFailures() throws IOException {
+		synchronized (lock) {
+			if (!failures.isEmpty()) {
+				IOException first = failures.get(0);
+				int size = failures.size();
+				failures.clear();
+				if (size > 1) {
+					throw new IOException(size + " writes have failed. " + first.getMessage(), first.getCause());
+				}
+				throw first;
+			}
+		}
+	}
+
+	/**
+	 * Waits until all the enqueued results have been written and flushes the
+	 * decorated writer. If some write has failed, the decorated writer is not
+	 * flushed (e.g. a transactional writer is not committed).
+	 * 
+	 * @throws IOException
+	 *             if some write has failed since the last flush
+	 */
+	@Override
+	public void flush() throws IOException {
+		await();
+		mergeMessages();
+		throwFailures();
+		writer.flush();
+	}
+
+	/**
+	 * Waits until all the enqueued results have been written, stops the I/O
+	 * threads and flushes the decorated writer if all the writes have
+	 * succeeded. It is not closed, since the chain writers are not closed
+	 * when they are used synchronously. The threads are started again if there
+	 * are new writes.
+	 * 
+	 * @throws IOException
+	 *             if some write has failed since the last flush
+	 */
+	@Override
+	public void close() throws IOException {
+		shutdown();
+		mergeMessages();
+		synchronized (lock) {
+			rejected = false;
+		}
+		throwFailures();
+		writer.flush();
+	}
+
+	/**
+	 * Stops the I/O threads once the enqueued results have been written. The
+	 * failures are kept to be reported by {@link #flush()} or
+	 * {@link #close()}.
+	 */
+	public synchronized void shutdown() throws IOException {
+		if (workers != null) {
+			await();
+			try {
+				for (int i = 0; i < workers.length; i++) {
+					queues.get(i).put(STOP);
+				}
+				for (int i = 0; i < workers.length; i++) {
+					workers[i].join();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while stopping the writer threads");
+			} finally {
+				workers = null;
+				queues = null;
+			}
+		}
+	}
+
+	@Override
+	public String getPath() {
+		return writer.getPath();
+	}
+
+	@Override
+	public void setPath(String path) {
+		writer.setPath(path);
+	}
+
+	@Override
+	public void setExcludes(String[] excludes) {
+		writer.setExcludes(excludes);
+	}
+
+	@Override
+	public String[] getExcludes() {
+		return writer.getExcludes();
+	}
+
+	@Override
+	public void setIncludes(String[] includes) {
+		writer.setIncludes(includes);
+	}
+
+	@Override
+	public String[] getIncludes() {
+		return writer.getIncludes();
+	}
+
+	private static class Write {
+
+		private final Object element;
+
+		private final VisitorContext context;
+
+		private final VisitorContext origin;
+
+		private final Object file;
+
+		Write(Object element, VisitorContext context, VisitorContext origin, Object file) {
+			this.element = element;
+			this.context = context;
+			this.origin = origin;
+			this.file = file;
+		}
+
+		void run(ChainWriter writer) throws Exception {
+			DispatchTable.Target[] methods = WriterDispatchPlan.forWriter(writer.getClass()).getWriteMethods(
+					element.getClass());
+			for (int j = 0; j < methods.length; j++) {
+				methods[j].invoke(writer, element, context);
+			}
+		}
+
+		boolean hasMessages() {
+			return context != null && !context.getVisitorMessages().isEmpty();
+		}
+
+		void mergeMessages() {
+			origin.getVisitorMessages().addAll(context.getVisitorMessages());
+		}
+
+		String getLocation() {
+			if (file instanceof File) {
+				return ((File) file).getPath();
+			}
+			if (file != null) {
+				return file.toString();
+			}
+			return "a " + element.getClass().getName();
+		}
+	}
+}
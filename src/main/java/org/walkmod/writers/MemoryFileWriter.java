@@ -0,0 +1,128 @@
+/* 
+  Copyright (C) 2013 Raquel Pau and Albert Coroleu.
+ 
+ Walkmod is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+ 
+ Walkmod is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser General Public License for more details.
+ 
+ You should have received a copy of the GNU Lesser General Public License
+ along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.writers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.apache.commons.io.FilenameUtils;
+import org.walkmod.util.FileMatcher;
+import org.walkmod.util.LineEndings;
+import org.walkmod.util.MemoryFileSystem;
+import org.walkmod.walkers.VisitorContext;
+
+/**
+ * Writes the results into a {@link MemoryFileSystem} instead of the disk, so
+ * they can be inspected with {@link MemoryFileSystem#read(String)}. The
+ * original files are the ones of the visitor context (e.g.
+ * {@link org.walkmod.util.MemoryFile#getFile()}) and the includes and
+ * excludes are relative to the writer path.
+ */
+public class MemoryFileWriter extends AbstractFileWriter {
+
+	private String fileSystem = MemoryFileSystem.DEFAULT;
+
+	private String path = "";
+
+	public String getFileSystem() {
+		return fileSystem;
+	}
+
+	/**
+	 * Sets the name of the file system. By default,
+	 * {@link MemoryFileSystem#DEFAULT}.
+	 */
+	public void setFileSystem(String fileSystem) {
+		this.fileSystem = fileSystem;
+	}
+
+	@Override
+	public void setPath(String path) {
+		this.path = path == null ? "" : MemoryFileSystem.normalize(path);
+	}
+
+	@Override
+	public String getPath() {
+		return path;
+	}
+
+	@Override
+	public File createOutputDirectory(Object o) {
+		return null;
+	}
+
+	@Override
+	public String getContent(Object n, VisitorContext vc) {
+		return n.toString();
+	}
+
+	/**
+	 * Returns the path of a file in the file system. The absolute files of
+	 * the working directory are stored with their relative path.
+	 */
+	protected String getMemoryPath(File out) {
+		String file = FilenameUtils.normalize(out.getAbsolutePath(), true);
+		String dir = FilenameUtils.normalize(new File(System.getProperty("user.dir")).getAbsolutePath(), true);
+		if (out.isAbsolute() && file.startsWith(dir + "/")) {
+			return file.substring(dir.length() + 1);
+		}
+		return MemoryFileSystem.normalize(out);
+	}
+
+	@Override
+	protected boolean isValid(File out) throws IOException {
+		if (out == null || (getIncludes() == null && getExcludes() == null)) {
+			return true;
+		}
+		FileMatcher matcher = FileMatcher.compile(new File(path), getIncludes(), getExcludes());
+		return matcher.accept(new File(getMemoryPath(out)));
+	}
+
+	/**
+	 * Stores the content as text, unless the file system already has it.
+	 */
+	@Override
+	protected boolean writeIfChanged(File out, String content, char endLineChar, boolean append) throws Exception {
+		StringWriter writer = new StringWriter(content.length() + 64);
+		if (append) {
+			append(content, writer, endLineChar);
+		} else {
+			write(content, writer, endLineChar);
+		}
+		String text = writer.toString();
+		MemoryFileSystem files = MemoryFileSystem.get(fileSystem);
+		String path = getMemoryPath(out);
+		if (text.equals(files.read(path))) {
+			return false;
+		}
+		files.write(path, text);
+		return true;
+	}
+
+	/**
+	 * Returns the end of line of the file in memory or '\n' if it does not
+	 * exist.
+	 */
+	@Override
+	public char getEndLineChar(File file) throws IOException {
+		String content = MemoryFileSystem.get(fileSystem).read(getMemoryPath(file));
+		if (content != null) {
+			return LineEndings.detect(content);
+		}
+		return '\n';
+	}
+}
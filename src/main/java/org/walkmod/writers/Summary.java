@@ -16,6 +16,7 @@
 package org.walkmod.writers;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -25,11 +26,15 @@ public class Summary {
 
 	private List<File> writtenFiles;
 
+	private List<File> skippedFiles;
+
 	private Summary() {
-		writtenFiles = new LinkedList<File>();
+		// the files can be written by the threads of an AsyncChainWriter
+		writtenFiles = Collections.synchronizedList(new LinkedList<File>());
+		skippedFiles = Collections.synchronizedList(new LinkedList<File>());
 	}
 
-	public static Summary getInstance() {
+	public static synchronized Summary getInstance() {
 		if (instance == null) {
 			instance = new Summary();
 		}
@@ -38,6 +43,7 @@ public class Summary {
 
 	public void clear() {
 		writtenFiles.clear();
+		skippedFiles.clear();
 	}
 
 	public List<File> getWrittenFiles() {
@@ -47,4 +53,16 @@ public class Summary {
 	public void addFile(File file) {
 		writtenFiles.add(file);
 	}
+
+	/**
+	 * Returns the files that have not been written because their content
+	 * has not changed.
+	 */
+	public List<File> getSkippedFiles() {
+		return skippedFiles;
+	}
+
+	public void addSkippedFile(File file) {
+		skippedFiles.add(file);
+	}
 }
@@ -139,6 +139,16 @@ public class OptionsTest {
         assertThat(options.getExcludes(), contains("one", "two", "path/three"));
     }
 
+    @Test
+    public void workers_option_setter_works() {
+        Options options = new Options();
+        assertThat(options.getWorkers(), is(1));
+
+        options.setWorkers(4);
+        assertThat(options.getWorkers(), is(4));
+        assertThat(OptionsBuilder.options().workers(8).build().getWorkers(), is(8));
+    }
+
     /**
      * OptionsBuilder tests start here
      */
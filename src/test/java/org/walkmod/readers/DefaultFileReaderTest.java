@@ -0,0 +1,57 @@
+package org.walkmod.readers;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.walkmod.Resource;
+
+public class DefaultFileReaderTest {
+
+	private List<String> read(DefaultFileReader reader) throws Exception {
+		Resource<File> resource = reader.read();
+		List<String> result = new ArrayList<String>();
+		Iterator<File> it = resource.iterator();
+		while (it.hasNext()) {
+			result.add(it.next().getName());
+		}
+		return result;
+	}
+
+	@Test
+	public void testReadsTheChangedFilesOfTheFileList() throws Exception {
+		File dir = File.createTempFile("walkmod", "reader").getCanonicalFile();
+		dir.delete();
+		dir.mkdirs();
+		try {
+			File a = new File(dir, "A.java");
+			File b = new File(dir, "B.java");
+			File c = new File(dir, "C.java");
+			FileUtils.writeStringToFile(a, "class A {}");
+			FileUtils.writeStringToFile(b, "class B {}");
+			FileUtils.writeStringToFile(c, "class C {}");
+			File fileList = new File(dir, "files.txt");
+			FileUtils.writeLines(fileList, Arrays.asList(a.getPath(), b.getPath()));
+
+			DefaultFileReader reader = new DefaultFileReader();
+			reader.setPath(dir.getPath());
+			reader.setExtensions(new String[] { "java" });
+			reader.setChangedFiles(new String[] { b.getPath(), c.getPath() });
+			Assert.assertEquals(Arrays.asList("B.java", "C.java"), read(reader));
+
+			reader.setFileList(fileList.getPath());
+			Assert.assertEquals(Arrays.asList("B.java"), read(reader));
+
+			reader.setFileList(null);
+			reader.setFiles(new String[] { a.getPath() });
+			Assert.assertTrue(read(reader).isEmpty());
+		} finally {
+			FileUtils.deleteDirectory(dir);
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package org.walkmod.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ArchiveResourceTest {
+
+	private File createArchive(String... names) throws Exception {
+		File archive = File.createTempFile("walkmod", "-sources.jar");
+		archive.deleteOnExit();
+		ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(archive));
+		try {
+			for (String name : names) {
+				zos.putNextEntry(new ZipEntry(name));
+				if (!name.endsWith("/")) {
+					zos.write(name.getBytes("UTF-8"));
+				}
+				zos.closeEntry();
+			}
+		} finally {
+			zos.close();
+		}
+		return archive;
+	}
+
+	@Test
+	public void testIteratesTheEntriesWithoutExtracting() throws Exception {
+		File archive = createArchive("META-INF/", "META-INF/MANIFEST.MF", "org/", "org/walkmod/", "org/walkmod/A.java",
+				"org/walkmod/util/B.java", "C.java");
+		ArchiveResource resource = new ArchiveResource();
+		resource.setFile(archive);
+		resource.setExtensions(new String[] { "java" });
+		resource.setExcludes(new String[] { "org/walkmod/util" });
+		List<String> names = new ArrayList<String>();
+		try {
+			for (ArchiveEntry entry : resource) {
+				names.add(entry.getName());
+				Assert.assertEquals(entry.getName(), new String(entry.getContent(), "UTF-8"));
+				Assert.assertEquals(entry.getName().length(), resource.getSize(entry));
+			}
+		} finally {
+			resource.close();
+		}
+		Assert.assertEquals(Arrays.asList("org/walkmod/A.java", "C.java"), names);
+	}
+
+	@Test
+	public void testEntryPathsAreNamespaces() throws Exception {
+		File archive = createArchive("org/walkmod/A.java", "C.java");
+		ArchiveResource resource = new ArchiveResource();
+		resource.setFile(archive);
+		resource.setIncludes(new String[] { "org/**" });
+		List<ArchiveEntry> entries = new ArrayList<ArchiveEntry>();
+		for (ArchiveEntry entry : resource) {
+			entries.add(entry);
+		}
+		resource.close();
+		Assert.assertEquals(1, entries.size());
+		ArchiveEntry entry = entries.get(0);
+		Assert.assertEquals("org.walkmod", resource.getNearestNamespace(entry, "."));
+		Assert.assertEquals("org/walkmod", resource.getOwnerNamespace(entry, "/"));
+		Assert.assertEquals(archive.getCanonicalPath() + "!/org/walkmod/A.java", entry.getLocation());
+		// the archive is opened again when the entry is read after closing it
+		Assert.assertEquals("org/walkmod/A.java", new String(entry.getContent(), "UTF-8"));
+		resource.close();
+	}
+}
@@ -5,7 +5,14 @@ import org.junit.Test;
 import org.walkmod.utils.TestUtils;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.SuffixFileFilter;
+import org.apache.commons.io.filefilter.TrueFileFilter;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
@@ -135,4 +142,174 @@ public class FileResourceTest {
 		assertThat(it.hasNext(), is(false));
 	}
 
+	@Test
+	public void testIteratesTheFilesLikeListFiles() throws Exception {
+		File dir = new File("src");
+		SuffixFileFilter filter = new SuffixFileFilter(".java");
+		List<File> expected = new ArrayList<File>(FileUtils.listFiles(dir, filter, TrueFileFilter.INSTANCE));
+		List<File> files = new ArrayList<File>();
+		Iterator<File> it = new DirectoryIterator(dir, filter, TrueFileFilter.INSTANCE);
+		while (it.hasNext()) {
+			files.add(it.next());
+		}
+		Assert.assertEquals(expected, files);
+	}
+
+	@Test
+	public void testDoesNotModifyThePatterns() throws Exception {
+		FileResource fr = new FileResource();
+		fr.setPath(SOURCES_PATH);
+		String[] includes = new String[] { "org/walkmod/**" };
+		String[] excludes = new String[] { "org/walkmod/util" };
+		fr.setIncludes(includes);
+		fr.setExcludes(excludes);
+		Iterator<File> it = fr.iterator();
+		Assert.assertTrue(it.hasNext());
+		Assert.assertEquals("org/walkmod/**", includes[0]);
+		Assert.assertEquals("org/walkmod/util", excludes[0]);
+		Assert.assertTrue(fr.getMatcher().accept(new File(SOURCES_PATH, "org/walkmod/Options.java")));
+		Assert.assertFalse(fr.getMatcher().accept(new File(SOURCES_PATH, "org/walkmod/util/FileResource.java")));
+	}
+
+	@Test
+	public void testParallelScanning() throws Exception {
+		FileResource fr = new FileResource();
+		fr.setPath("src");
+		fr.setExtensions(new String[] { "java" });
+		List<File> expected = new ArrayList<File>();
+		for (File f : fr) {
+			expected.add(f);
+		}
+
+		fr.setParallelism(4);
+		List<File> files = new ArrayList<File>();
+		for (File f : fr) {
+			files.add(f);
+		}
+		Assert.assertEquals(expected, files);
+
+		fr.setOrdered(false);
+		files.clear();
+		for (File f : fr) {
+			files.add(f);
+		}
+		Assert.assertEquals(expected.size(), files.size());
+		Assert.assertEquals(new HashSet<File>(expected), new HashSet<File>(files));
+	}
+
+	@Test
+	public void testPrefetchesTheFileContents() throws Exception {
+		PrefetchingFileResource fr = new PrefetchingFileResource();
+		fr.setPath(SOURCES_PATH);
+		fr.setPrefetch(4);
+		fr.setBufferSize(64 * 1024);
+		int files = 0;
+		for (File f : fr) {
+			if (files % 2 == 0) {
+				Assert.assertArrayEquals(FileUtils.readFileToByteArray(f), fr.getContent(f));
+			}
+			files++;
+		}
+		Assert.assertTrue(files > 0);
+		Assert.assertEquals((files + 1) / 2, fr.getHits() + fr.getMisses());
+		Assert.assertTrue(fr.getPeakBufferedBytes() <= 64 * 1024);
+		Assert.assertEquals(0, fr.getBufferedBytes());
+	}
+
+	@Test
+	public void testDetectsTheEndLineCharWhenPrefetching() throws Exception {
+		File dir = File.createTempFile("test", "prefetch");
+		dir.delete();
+		dir.mkdirs();
+		File crlf = new File(dir, "crlf.txt");
+		File lf = new File(dir, "lf.txt");
+		FileUtils.writeStringToFile(crlf, "a\r\nb\r\n");
+		FileUtils.writeStringToFile(lf, "a\nb\n");
+		PrefetchingFileResource fr = new PrefetchingFileResource();
+		fr.setPath(dir.getPath());
+		fr.setPrefetch(2);
+		// the second file does not fit in the buffer, so it is only read ahead
+		fr.setBufferSize(6);
+		for (File f : fr) {
+			Assert.assertEquals(f.getName().equals("crlf.txt") ? '\r' : '\n', fr.getEndLineChar(f));
+		}
+		FileUtils.deleteDirectory(dir);
+	}
+
+	@Test
+	public void testIteratesOnlyTheListedFiles() throws Exception {
+		FileResource fr = new FileResource();
+		fr.setPath(SOURCES_PATH);
+		fr.setExtensions(new String[] { "java" });
+		fr.setExcludes(new String[] { "org/walkmod/util" });
+		List<File> files = new ArrayList<File>();
+		files.add(new File(SOURCES_PATH, "org/walkmod/Options.java"));
+		files.add(new File(SOURCES_PATH, "org/walkmod/util/FileResource.java"));
+		files.add(new File(SOURCES_PATH, "org/walkmod/Missing.java"));
+		files.add(new File("pom.xml"));
+		files.add(new File(SOURCES_PATH, "org/walkmod/Options.java").getAbsoluteFile());
+		fr.setFiles(files);
+
+		List<File> result = new ArrayList<File>();
+		for (File f : fr) {
+			result.add(f);
+		}
+		Assert.assertEquals(1, result.size());
+		Assert.assertEquals(new File(SOURCES_PATH, "org/walkmod/Options.java").getCanonicalFile(), result.get(0));
+	}
+
+	@Test
+	public void testDetectsTheEndLineCharWhenReading() throws Exception {
+		File file = File.createTempFile("test", "crlf.txt");
+		FileUtils.writeStringToFile(file, "a\r\nb\r\n");
+		FileResource fr = new FileResource();
+		fr.setFile(file);
+		Assert.assertEquals('\0', fr.getEndLineChar(file));
+		fr.getBuffer(file);
+		Assert.assertEquals('\r', fr.getEndLineChar(file));
+		fr.removeEndLineChar(file);
+		Assert.assertEquals('\0', fr.getEndLineChar(file));
+		file.delete();
+	}
+
+	@Test
+	public void testCachedNamespacesOfNestedPackages() throws Exception {
+		FileResource fr = new FileResource();
+		fr.setPath(SOURCES_PATH);
+		int files = 0;
+		for (int i = 0; i < 2; i++) {
+			for (File f : fr) {
+				String expected = f.getParentFile().getPath().replaceAll("/", "::");
+				Assert.assertEquals(expected, fr.getNearestNamespace(f, "::"));
+				Assert.assertEquals(expected, fr.getOwnerNamespace(f, "::"));
+				files++;
+			}
+		}
+		Assert.assertTrue(files > 2);
+	}
+
+	@Test
+	public void testCachedNamespacesPerSeparator() throws Exception {
+		FileResource fr = new FileResource();
+		fr.setPath(SOURCES_PATH);
+		File file = new File(SOURCES_PATH, "org/walkmod/util/FileResource.java").getCanonicalFile();
+		String dir = file.getParentFile().getPath();
+		Assert.assertEquals(dir.replaceAll("/", "::"), fr.getNearestNamespace(file, "::"));
+		Assert.assertEquals(dir.replaceAll("/", "\\."), fr.getNearestNamespace(file, "\\."));
+		Assert.assertEquals(dir.replaceAll("/", "\\$"), fr.getOwnerNamespace(file, "\\$"));
+		Assert.assertEquals(dir.replaceAll("/", "::"), fr.getOwnerNamespace(file, "::"));
+	}
+
+	@Test
+	public void testCachedNamespacesOfFilesOutsideTheRoot() throws Exception {
+		FileResource fr = new FileResource();
+		fr.setPath(SOURCES_PATH);
+		File[] files = { new File("pom.xml").getAbsoluteFile(), new File("/tmp/Outside.java"),
+				new File("src/test/java/org/walkmod/util/FileResourceTest.java") };
+		for (File f : files) {
+			String expected = f.getParent().replaceAll("/", ".");
+			Assert.assertEquals(expected, fr.getNearestNamespace(f, "."));
+			Assert.assertEquals(expected, fr.getOwnerNamespace(f, "."));
+		}
+	}
 }
@@ -0,0 +1,91 @@
+package org.walkmod.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class GitChangesTest {
+
+	@Test
+	public void testParsesTheAddedModifiedAndRenamedFiles() {
+		String output = "M\0src/A.java\0A\0src/B.java\0R087\0src/C.java\0src/D.java\0D\0src/E.java\0C100\0src/F.java\0src/G java.java\0";
+		Assert.assertEquals(Arrays.asList("src/A.java", "src/B.java", "src/D.java", "src/G java.java"),
+				GitChanges.parseDiff(output));
+	}
+
+	@Test
+	public void testParsesTheUntrackedFiles() {
+		Assert.assertEquals(Arrays.asList("a.txt", "b/c.txt"), GitChanges.parsePaths("a.txt\0b/c.txt\0"));
+		Assert.assertTrue(GitChanges.parsePaths("").isEmpty());
+		Assert.assertTrue(GitChanges.parseDiff("").isEmpty());
+	}
+
+	@Test
+	public void testReadsTheChangesOfALocalRepository() throws Exception {
+		File repo = File.createTempFile("walkmod", "repo").getCanonicalFile();
+		repo.delete();
+		repo.mkdirs();
+		try {
+			Assume.assumeTrue(run(repo, "git", "init", "-q"));
+			run(repo, "git", "config", "user.email", "test@walkmod.org");
+			run(repo, "git", "config", "user.name", "test");
+			StringBuilder content = new StringBuilder();
+			for (int i = 0; i < 50; i++) {
+				content.append("line ").append(i).append('\n');
+			}
+			FileUtils.writeStringToFile(new File(repo, "src/A.java"), "class A {}\n");
+			FileUtils.writeStringToFile(new File(repo, "src/B.java"), "class B {}\n");
+			FileUtils.writeStringToFile(new File(repo, "src/C.java"), content.toString());
+			FileUtils.writeStringToFile(new File(repo, "src/Same.java"), "class Same {}\n");
+			Assert.assertTrue(run(repo, "git", "add", "."));
+			Assert.assertTrue(run(repo, "git", "commit", "-q", "-m", "initial"));
+			Assert.assertTrue(run(repo, "git", "tag", "base"));
+
+			FileUtils.writeStringToFile(new File(repo, "src/A.java"), "class A { int a; }\n");
+			new File(repo, "src/B.java").delete();
+			Assert.assertTrue(run(repo, "git", "mv", "src/C.java", "src/D.java"));
+			Assert.assertTrue(run(repo, "git", "commit", "-q", "-m", "rename"));
+			FileUtils.writeStringToFile(new File(repo, "src/E.java"), "class E {}\n");
+
+			List<File> changes = GitChanges.since(new File(repo, "src"), "base");
+			Set<File> expected = new HashSet<File>(Arrays.asList(new File(repo, "src/A.java"),
+					new File(repo, "src/D.java"), new File(repo, "src/E.java")));
+			Assert.assertEquals(expected, new HashSet<File>(changes));
+		} finally {
+			FileUtils.deleteDirectory(repo);
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testFailsWithAnUnknownReference() throws Exception {
+		File repo = File.createTempFile("walkmod", "repo").getCanonicalFile();
+		repo.delete();
+		repo.mkdirs();
+		try {
+			Assume.assumeTrue(run(repo, "git", "init", "-q"));
+			GitChanges.since(repo, "unknown");
+		} finally {
+			FileUtils.deleteDirectory(repo);
+		}
+	}
+
+	private static boolean run(File dir, String... command) throws InterruptedException {
+		try {
+			Process process = new ProcessBuilder(command).directory(dir).redirectErrorStream(true).start();
+			process.getOutputStream().close();
+			IOUtils.toString(process.getInputStream());
+			return process.waitFor() == 0;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package org.walkmod.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MemoryResourceTest {
+
+	@After
+	public void removeFileSystem() {
+		MemoryFileSystem.remove("test");
+	}
+
+	private List<String> iterate(MemoryResource resource) {
+		List<String> result = new ArrayList<String>();
+		for (MemoryFile file : resource) {
+			result.add(file.getPath());
+		}
+		return result;
+	}
+
+	@Test
+	public void testIteratesTheFilesOfADirectory() throws Exception {
+		MemoryFileSystem fs = MemoryFileSystem.get("test");
+		fs.write("src/main/java/org/walkmod/A.java", "class A {}");
+		fs.write("./src/main/java/org/walkmod/util/B.java", "class B {}");
+		fs.write("src/main/java/C.txt", "C");
+		fs.write("src/main/java0/D.java", "class D {}");
+		fs.write("pom.xml", "<project/>");
+		Assert.assertSame(fs, MemoryFileSystem.get("test"));
+
+		MemoryResource resource = new MemoryResource();
+		resource.setFileSystem(fs);
+		resource.setPath("src/main/java");
+		Assert.assertEquals(Arrays.asList("src/main/java/C.txt", "src/main/java/org/walkmod/A.java",
+				"src/main/java/org/walkmod/util/B.java"), iterate(resource));
+
+		resource.setExtensions(new String[] { "java" });
+		resource.setExcludes(new String[] { "org/walkmod/util" });
+		Assert.assertEquals(Arrays.asList("src/main/java/org/walkmod/A.java"), iterate(resource));
+
+		MemoryFile file = resource.iterator().next();
+		Assert.assertEquals("class A {}", file.getContent());
+		Assert.assertEquals("A.java", file.getName());
+		Assert.assertEquals("src.main.java.org.walkmod", resource.getNearestNamespace(file, "."));
+		Assert.assertEquals(10, resource.getSize(file));
+
+		resource.setPath("pom.xml");
+		resource.setExtensions(null);
+		resource.setExcludes(null);
+		Assert.assertEquals(Arrays.asList("pom.xml"), iterate(resource));
+	}
+}
@@ -0,0 +1,423 @@
+package org.walkmod.walkers;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.walkmod.SizedResource;
+import org.walkmod.merger.IdentificableNode;
+import org.walkmod.merger.MergeEngine;
+import org.walkmod.merger.Mergeable;
+
+public class AbstractWalkerTest {
+
+	public static class IntegerResource implements SizedResource<Integer> {
+
+		private final List<Integer> elements = new ArrayList<Integer>();
+
+		public IntegerResource(int size) {
+			for (int i = 0; i < size; i++) {
+				elements.add(i);
+			}
+		}
+
+		@Override
+		public Iterator<Integer> iterator() {
+			return elements.iterator();
+		}
+
+		@Override
+		public String getNearestNamespace(Object element, String regexSeparator) {
+			return "";
+		}
+
+		@Override
+		public String getOwnerNamespace(Object element, String regexSeparator) {
+			return "";
+		}
+
+		@Override
+		public long getSize(Object element) {
+			return (Integer) element % 10;
+		}
+	}
+
+	public static class CollectingWriter {
+
+		private List<Object> written = new LinkedList<Object>();
+
+		public void write(Object n, VisitorContext vc) {
+			written.add(n);
+		}
+
+		public List<Object> getWritten() {
+			return written;
+		}
+	}
+
+	public static class KeyNode implements IdentificableNode, Mergeable<KeyNode> {
+
+		private final String key;
+
+		private final List<KeyNode> merged = new LinkedList<KeyNode>();
+
+		public KeyNode(String key) {
+			this.key = key;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		@Override
+		public Comparator<?> getIdentityComparator() {
+			return new Comparator<KeyNode>() {
+				@Override
+				public int compare(KeyNode o1, KeyNode o2) {
+					return o1.key.compareTo(o2.key);
+				}
+			};
+		}
+
+		@Override
+		public void merge(KeyNode o, MergeEngine e) {
+			merged.add(o);
+		}
+	}
+
+	public static class HashedKeyNode extends KeyNode implements IdentityKeyNode {
+
+		public HashedKeyNode(String key) {
+			super(key);
+		}
+
+		@Override
+		public Object getIdentityKey() {
+			return getKey();
+		}
+	}
+
+	public static class OtherKeyNode extends KeyNode {
+
+		public OtherKeyNode(String key) {
+			super(key);
+		}
+	}
+
+	public static class SampleWalker extends AbstractWalker {
+
+		private final Random random = new Random();
+
+		private Parser<?> parser;
+
+		public void accept(Integer n) throws Exception {
+			Thread.sleep(random.nextInt(3));
+			VisitorContext ctx = new VisitorContext();
+			ctx.addTransformationMessage("visited " + n);
+			addVisitorMessages(ctx);
+			List<Object> nodes = new LinkedList<Object>();
+			nodes.add(n);
+			writeAll(nodes, ctx);
+		}
+
+		@Override
+		protected Object getSourceNode(Object targetNode) {
+			return null;
+		}
+
+		@Override
+		protected String getLocation(VisitorContext ctx) {
+			return "";
+		}
+
+		@Override
+		public void setParser(Parser<?> parser) {
+			this.parser = parser;
+		}
+
+		@Override
+		public Parser<?> getParser() {
+			return parser;
+		}
+
+		@Override
+		public int getNumModifications() {
+			return 0;
+		}
+
+		@Override
+		public int getNumAdditions() {
+			return 0;
+		}
+
+		@Override
+		public int getNumDeletions() {
+			return 0;
+		}
+
+		@Override
+		public boolean reportChanges() {
+			return false;
+		}
+
+		@Override
+		public void setReportChanges(boolean reportChanges) {
+		}
+	}
+
+	public static class TreeWalker extends SampleWalker {
+
+		private int maxVisited = 0;
+
+		@Override
+		public void accept(Integer n) throws Exception {
+			// a synthetic parsed tree of 64 KB per file
+			byte[] tree = new byte[1 << 16];
+			Assert.assertTrue(isVisitable(tree));
+			Assert.assertFalse(isVisitable(tree));
+			synchronized (this) {
+				maxVisited = Math.max(maxVisited, getVisitedElements().size());
+			}
+		}
+	}
+
+	@Test
+	public void testParallelExecutionKeepsTheResourceOrder() throws Exception {
+		SampleWalker walker = new SampleWalker();
+		CollectingWriter writer = new CollectingWriter();
+		walker.setResource(new IntegerResource(200));
+		walker.setWriter(writer);
+		walker.setWorkers(4);
+		walker.execute();
+
+		Assert.assertEquals(200, writer.getWritten().size());
+		Assert.assertEquals(200, walker.getVisitorMessages().size());
+		int i = 0;
+		for (VisitorMessage message : walker.getVisitorMessages()) {
+			Assert.assertEquals(i, writer.getWritten().get(i));
+			Assert.assertEquals("visited " + i, message.getText());
+			i++;
+		}
+	}
+
+	public static class CountingWalker extends SampleWalker {
+
+		private final AtomicInteger writeAlls = new AtomicInteger();
+
+		private final AtomicInteger writes = new AtomicInteger();
+
+		@Override
+		protected void writeAll(Collection<Object> elements, VisitorContext vc) throws Exception {
+			writeAlls.incrementAndGet();
+			super.writeAll(elements, vc);
+		}
+
+		@Override
+		protected void write(Object element, VisitorContext vc) throws Exception {
+			writes.incrementAndGet();
+			super.write(element, vc);
+		}
+	}
+
+	@Test
+	public void testParallelExecutionRunsTheWriteOverridesOnce() throws Exception {
+		CountingWalker walker = new CountingWalker();
+		CollectingWriter writer = new CollectingWriter();
+		walker.setResource(new IntegerResource(50));
+		walker.setWriter(writer);
+		walker.setWorkers(4);
+		walker.execute();
+
+		Assert.assertEquals(50, writer.getWritten().size());
+		Assert.assertEquals(50, walker.writeAlls.get());
+		Assert.assertEquals(50, walker.writes.get());
+	}
+
+	@Test
+	public void testSequentialExecutionByDefault() throws Exception {
+		SampleWalker walker = new SampleWalker();
+		CollectingWriter writer = new CollectingWriter();
+		walker.setResource(new IntegerResource(10));
+		walker.setWriter(writer);
+		walker.execute();
+		Assert.assertEquals(1, walker.getWorkers());
+		Assert.assertEquals(Collections.<Object> singletonList(9), writer.getWritten().subList(9, 10));
+	}
+
+	@Test
+	public void testMergesWithTheFirstIdenticalNodeOfTheSameClass() {
+		VisitorContext vc = new VisitorContext();
+		KeyNode a = new KeyNode("a");
+		KeyNode otherA = new OtherKeyNode("a");
+		KeyNode b = new KeyNode("b");
+		KeyNode secondA = new KeyNode("a");
+		vc.addAllResultNodes(Arrays.<Object> asList(otherA, b, a, secondA));
+
+		KeyNode node = new KeyNode("a");
+		Object result = new SampleWalker().merge(node, null, vc);
+
+		Assert.assertSame(a, result);
+		Assert.assertEquals(Collections.singletonList(node), a.merged);
+		Assert.assertEquals(Arrays.<Object> asList(otherA, b, secondA), vc.getResultNodes());
+	}
+
+	@Test
+	public void testMergesAResultNodeWithTheNextIdenticalOne() {
+		VisitorContext vc = new VisitorContext();
+		KeyNode a = new KeyNode("a");
+		KeyNode b = new KeyNode("b");
+		KeyNode secondA = new KeyNode("a");
+		vc.addAllResultNodes(Arrays.<Object> asList(a, b, secondA));
+
+		Object result = new SampleWalker().merge(a, null, vc);
+
+		Assert.assertSame(a, result);
+		Assert.assertEquals(Collections.singletonList(secondA), a.merged);
+		Assert.assertEquals(Collections.<Object> singletonList(b), vc.getResultNodes());
+	}
+
+	@Test
+	public void testSkipsTheNullMergeResults() {
+		VisitorContext vc = new VisitorContext();
+		vc.addResultNode("b");
+
+		// no previous result and no source node
+		Object result = new SampleWalker().merge(new KeyNode("a"), null, vc);
+		Assert.assertNull(result);
+		Assert.assertFalse(vc.addResultNode(result));
+		Assert.assertEquals(Collections.<Object> singletonList("b"), vc.getResultNodes());
+
+		VisitorContext empty = new VisitorContext();
+		empty.addResultNode(null);
+		Assert.assertFalse(empty.hasResultNodes());
+	}
+
+	@Test
+	public void testMergesWithTheFirstNodeOfTheSameIdentityKey() {
+		VisitorContext vc = new VisitorContext();
+		KeyNode a = new HashedKeyNode("a");
+		KeyNode b = new HashedKeyNode("b");
+		KeyNode secondA = new HashedKeyNode("a");
+		KeyNode thirdA = new HashedKeyNode("a");
+		vc.addAllResultNodes(Arrays.<Object> asList(new OtherKeyNode("a"), a, b, secondA, thirdA));
+		// moving a node to the end keeps it in the index
+		vc.addResultNode(a);
+
+		KeyNode node = new HashedKeyNode("a");
+		Assert.assertSame(secondA, new SampleWalker().merge(node, null, vc));
+		Assert.assertEquals(Collections.singletonList(node), secondA.merged);
+		Assert.assertSame(thirdA, new SampleWalker().merge(new HashedKeyNode("a"), null, vc));
+		Assert.assertSame(a, new SampleWalker().merge(new HashedKeyNode("a"), null, vc));
+		Assert.assertNull(new SampleWalker().merge(new HashedKeyNode("a"), null, vc));
+		Assert.assertSame(b, new SampleWalker().merge(new HashedKeyNode("b"), null, vc));
+		Assert.assertEquals(1, vc.getResultNodes().size());
+
+		// a result node absorbs the next node with its key
+		vc.addAllResultNodes(Arrays.<Object> asList(a, b, secondA));
+		Assert.assertSame(a, new SampleWalker().merge(a, null, vc));
+		Assert.assertSame(secondA, a.merged.get(a.merged.size() - 1));
+		Assert.assertEquals(2, vc.getResultNodes().size());
+		Assert.assertTrue(vc.getResultNodes().contains(b));
+	}
+
+	@Test
+	public void testMergesEqualNodes() {
+		VisitorContext vc = new VisitorContext();
+		String a = new String("a");
+		vc.addResultNode("b");
+		vc.addResultNode(a);
+
+		String node = new String("a");
+		Assert.assertSame(node, new SampleWalker().merge(node, null, vc));
+		Assert.assertEquals(Collections.<Object> singletonList("b"), vc.getResultNodes());
+
+		vc.addResultNode(node);
+		Assert.assertNull(new SampleWalker().merge(node, null, vc));
+		Assert.assertEquals(Collections.<Object> singletonList("b"), vc.getResultNodes());
+	}
+
+	@Test
+	public void testVisitedElementsArePerFile() throws Exception {
+		TreeWalker walker = new TreeWalker();
+		walker.setResource(new IntegerResource(5000));
+		walker.setWriter(new CollectingWriter());
+		walker.setVisitedElementsPolicy(AbstractWalker.VISITED_ELEMENTS_FILE);
+		walker.execute();
+		Assert.assertEquals(1, walker.maxVisited);
+		Assert.assertTrue(walker.getVisitedElements().isEmpty());
+
+		walker.setWorkers(4);
+		walker.execute();
+		Assert.assertTrue(walker.getVisitedElements().isEmpty());
+	}
+
+	@Test
+	public void testVisitedFilesAreKeptAsPathHashes() throws Exception {
+		TreeWalker walker = new TreeWalker();
+		walker.setVisitedElementsPolicy(AbstractWalker.VISITED_ELEMENTS_PATH_HASH);
+		for (int i = 0; i < 5000; i++) {
+			Assert.assertTrue(walker.isVisitable(new File("src/Foo" + i + ".java")));
+		}
+		Assert.assertFalse(walker.isVisitable(new File("src/Foo42.java")));
+		Assert.assertEquals(5000, walker.getVisitedElements().size());
+
+		Set<Object> visited = walker.getVisitedElements();
+		Assert.assertEquals("[5000 visited elements]", visited.toString());
+		Assert.assertTrue(visited.remove(new File("src/Foo42.java").getAbsoluteFile()));
+		Assert.assertFalse(visited.remove(new File("src/Foo42.java")));
+		List<File> removed = new ArrayList<File>();
+		for (int i = 0; i < 5000; i += 2) {
+			removed.add(new File("src/Foo" + i + ".java"));
+		}
+		Assert.assertTrue(visited.removeAll(removed));
+		Assert.assertEquals(2500, visited.size());
+		for (int i = 0; i < 5000; i++) {
+			Assert.assertEquals(i % 2 == 1, visited.contains(new File("src/Foo" + i + ".java")));
+		}
+		Assert.assertTrue(visited.containsAll(Arrays.asList(new File("src/Foo1.java"), new File("src/Foo3.java"))));
+		Assert.assertTrue(visited.equals(visited));
+		Assert.assertFalse(visited.equals(new HashSet<Object>()));
+		Assert.assertTrue(visited.retainAll(Arrays.asList(new File("src/Foo1.java"), new File("src/Foo2.java"))));
+		Assert.assertEquals(1, visited.size());
+		Assert.assertTrue(visited.contains(new File("src/Foo1.java")));
+	}
+
+	@Test
+	public void testLargestFirstSchedulingWritesInTheLargestFirstOrder() throws Exception {
+		SampleWalker walker = new SampleWalker();
+		CollectingWriter writer = new CollectingWriter();
+		walker.setResource(new IntegerResource(100));
+		walker.setWriter(writer);
+		walker.setWorkers(4);
+		walker.setSchedulingPolicy(AbstractWalker.SCHEDULING_LARGEST_FIRST);
+		walker.execute();
+
+		Assert.assertEquals(100, writer.getWritten().size());
+		for (int i = 0; i < 100; i++) {
+			// sizes from 9 to 0 and the resource order for the same size
+			Assert.assertEquals((9 - i / 10) + (i % 10) * 10, writer.getWritten().get(i));
+		}
+		WorkerReport report = walker.getWorkerReport();
+		int elements = 0;
+		long bytes = 0;
+		for (WorkerReport.Worker worker : report.getWorkers()) {
+			elements += worker.getElements();
+			bytes += worker.getBytes();
+		}
+		Assert.assertEquals(100, elements);
+		Assert.assertEquals(450, bytes);
+		Assert.assertTrue(report.getLatencyMillis(50) <= report.getLatencyMillis(100));
+	}
+}
@@ -0,0 +1,91 @@
+package org.walkmod.walkers;
+
+import java.lang.reflect.Method;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DispatchTableTest {
+
+	public static class SampleVisitor {
+
+		private List<String> calls = new LinkedList<String>();
+
+		public void visit(Integer n) {
+			calls.add("integer");
+		}
+
+		public void visit(CharSequence s, VisitorContext ctx) {
+			calls.add("charSequence:" + (ctx != null));
+		}
+
+		public List<String> getCalls() {
+			return calls;
+		}
+	}
+
+	public interface Named {
+	}
+
+	public interface Labeled extends Named {
+	}
+
+	public static class Sample implements Labeled {
+	}
+
+	public static class SampleWalker {
+
+		public void accept(Sample sample) {
+		}
+
+		public void accept(Labeled labeled) {
+		}
+
+		public void accept(Named named) {
+		}
+	}
+
+	@Test
+	public void testResolvesAcceptMethodsThroughTheInterfaces() {
+		Method[] methods = DispatchTable.getAcceptMethods(SampleWalker.class, Sample.class);
+		Assert.assertEquals(3, methods.length);
+		Assert.assertEquals(Sample.class, methods[0].getParameterTypes()[0]);
+		Assert.assertEquals(Labeled.class, methods[1].getParameterTypes()[0]);
+		Assert.assertEquals(Named.class, methods[2].getParameterTypes()[0]);
+		Assert.assertSame(methods, DispatchTable.getAcceptMethods(SampleWalker.class, Sample.class));
+		Assert.assertEquals(0, DispatchTable.getAcceptMethods(SampleWalker.class, String.class).length);
+	}
+
+	@Test
+	public void testResolvesOnlyApplicableOverloads() throws Exception {
+		DispatchTable.Target[] targets = DispatchTable.getVisitMethods(SampleVisitor.class, StringBuilder.class);
+		Assert.assertEquals(1, targets.length);
+		Assert.assertEquals(2, targets[0].getParamsLength());
+
+		SampleVisitor visitor = new SampleVisitor();
+		targets[0].invoke(visitor, new StringBuilder(), new VisitorContext());
+		Assert.assertEquals("charSequence:true", visitor.getCalls().get(0));
+	}
+
+	@Test
+	public void testCachesResolvedMethods() {
+		DispatchTable.Target[] first = DispatchTable.getVisitMethods(SampleVisitor.class, Integer.class);
+		DispatchTable.Target[] second = DispatchTable.getVisitMethods(SampleVisitor.class, Integer.class);
+		Assert.assertSame(first, second);
+		Assert.assertEquals(1, first.length);
+
+		DispatchTable.clear();
+		DispatchTable.Target[] third = DispatchTable.getVisitMethods(SampleVisitor.class, Integer.class);
+		Assert.assertNotSame(first, third);
+		Assert.assertEquals(first[0].getMethod(), third[0].getMethod());
+	}
+
+	@Test
+	public void testStopsAtTheExactType() {
+		DispatchTable.Target[] targets = DispatchTable.getVisitMethods(SampleVisitor.class, Integer.class);
+		Assert.assertEquals(Integer.class, targets[targets.length - 1].getMethod().getParameterTypes()[0]);
+		Assert.assertEquals(0, DispatchTable.getVisitMethods(SampleVisitor.class, Long.class).length);
+	}
+}
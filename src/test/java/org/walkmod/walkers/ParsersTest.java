@@ -0,0 +1,71 @@
+package org.walkmod.walkers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.walkmod.util.FileResource;
+
+public class ParsersTest {
+
+	public static class TextParser implements Parser<String> {
+
+		@Override
+		public String parse(String text) throws ParseException {
+			return text;
+		}
+
+		@Override
+		public String parse(String text, boolean withoutLocation) throws ParseException {
+			return text;
+		}
+
+		@Override
+		public String parse(File file) throws ParseException {
+			return parse(file, null);
+		}
+
+		@Override
+		public String parse(File file, String encoding) throws ParseException {
+			try {
+				return FileUtils.readFileToString(file, encoding);
+			} catch (IOException e) {
+				throw new ParseException(e);
+			}
+		}
+
+		@Override
+		public String parse(Reader reader) throws ParseException {
+			try {
+				return IOUtils.toString(reader);
+			} catch (IOException e) {
+				throw new ParseException(e);
+			}
+		}
+	}
+
+	@Test
+	public void testParsesBuffersWithAnyParser() throws Exception {
+		String text = "class Foo { String s = \"àé€😀\"; }";
+		TextParser parser = new TextParser();
+		Assert.assertEquals(text, Parsers.parse(parser, CharBuffer.wrap(text)));
+		Assert.assertEquals(text, Parsers.parse(parser, ByteBuffer.wrap(text.getBytes("UTF-8")), "UTF-8"));
+	}
+
+	@Test
+	public void testParsesMappedFiles() throws Exception {
+		File file = new File("src/main/java/org/walkmod/walkers/AbstractWalker.java");
+		FileResource resource = new FileResource();
+		resource.setMappingThreshold(0);
+		ByteBuffer buffer = resource.getBuffer(file);
+		Assert.assertTrue(buffer.isDirect());
+		Assert.assertEquals(FileUtils.readFileToString(file, "UTF-8"),
+				Parsers.parse(new TextParser(), buffer, "UTF-8"));
+	}
+}
@@ -0,0 +1,136 @@
+/* 
+  Copyright (C) 2013 Raquel Pau and Albert Coroleu.
+ 
+ Walkmod is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+ 
+ Walkmod is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser General Public License for more details.
+ 
+ You should have received a copy of the GNU Lesser General Public License
+ along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.walkers;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class VisitorContextTest {
+
+	@Test
+	public void testReadsThroughTheParent() {
+		VisitorContext parent = new VisitorContext();
+		parent.put("a", "1");
+		parent.put("b", "2");
+		parent.addResultNode("node");
+
+		VisitorContext child = new VisitorContext(null, parent);
+		Assert.assertEquals("1", child.get("a"));
+		Assert.assertTrue(child.containsKey("b"));
+		Assert.assertFalse(child.hasResultNodes());
+
+		Assert.assertEquals("1", child.put("a", "3"));
+		Assert.assertEquals("3", child.get("a"));
+		Assert.assertEquals("1", parent.get("a"));
+
+		child.addTransformationMessage("message");
+		Assert.assertTrue(parent.getVisitorMessages().contains("message"));
+	}
+
+	@Test
+	public void testCopiesOnBulkOperations() {
+		VisitorContext parent = new VisitorContext();
+		parent.put("a", "1");
+		parent.put("b", "2");
+
+		VisitorContext child = new VisitorContext(null, parent);
+		child.put("c", "3");
+		Assert.assertEquals(3, child.size());
+
+		Assert.assertEquals("2", child.remove("b"));
+		Assert.assertFalse(child.containsKey("b"));
+		Assert.assertEquals("2", parent.get("b"));
+		Assert.assertEquals(2, child.entrySet().size());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testDefaultMapMethodsReadThroughTheParent() {
+		VisitorContext parent = new VisitorContext();
+		parent.put("a", "1");
+		parent.put("b", "2");
+
+		VisitorContext child = new VisitorContext(null, parent);
+		Assert.assertEquals("1", child.getOrDefault("a", "0"));
+		Assert.assertEquals("0", child.getOrDefault("z", "0"));
+		Assert.assertEquals("1", child.putIfAbsent("a", "3"));
+		Assert.assertEquals("1", child.computeIfAbsent("a", null));
+		Assert.assertEquals("12", child.merge("a", "2", new BiFunction<Object, Object, Object>() {
+
+			@Override
+			public Object apply(Object x, Object y) {
+				return (String) x + y;
+			}
+		}));
+		Assert.assertEquals("1", parent.get("a"));
+		Assert.assertFalse(child.remove("b", "3"));
+		Assert.assertTrue(child.remove("b", "2"));
+		Assert.assertFalse(child.containsKey("b"));
+		Assert.assertEquals("2", parent.get("b"));
+
+		final Map<String, Object> visited = new HashMap<String, Object>();
+		child.forEach(new BiConsumer<String, Object>() {
+
+			@Override
+			public void accept(String key, Object value) {
+				visited.put(key, value);
+			}
+		});
+		Assert.assertEquals(child, visited);
+
+		child.addResultNode("node");
+		Assert.assertSame(child.get("result"), child.putIfAbsent("result", "value"));
+		Assert.assertNull(child.replace("result", "value"));
+		Assert.assertFalse(child.remove("result", child.get("result")));
+		List<Object> result = (List<Object>) child.get("result");
+		Assert.assertEquals(Arrays.asList("node"), result);
+		child.addResultNode("other");
+		Assert.assertEquals(Arrays.asList("node", "other"), result);
+
+		VisitorContext copy = (VisitorContext) child.clone();
+		Assert.assertEquals("12", copy.get("a"));
+		Assert.assertFalse(copy.containsKey("b"));
+	}
+
+	@Test
+	public void testResultNodesAreAnIdentityOrderedSet() {
+		VisitorContext ctx = new VisitorContext();
+		String a = new String("a");
+		String b = new String("b");
+		String otherA = new String("a");
+		ctx.addResultNode(a);
+		ctx.addResultNode(b);
+		ctx.addResultNode(otherA);
+		ctx.addResultNode(a);
+
+		Collection<Object> nodes = ctx.getResultNodes();
+		Assert.assertEquals(Arrays.asList(b, otherA, a), nodes);
+		Assert.assertSame(nodes, ctx.getResultNodes());
+
+		Assert.assertTrue(ctx.removeResultNode(otherA));
+		Assert.assertFalse(ctx.removeResultNode(otherA));
+		Assert.assertEquals(3, nodes.size());
+		Assert.assertEquals(Arrays.asList(b, a), ctx.getResultNodes());
+	}
+}
@@ -0,0 +1,36 @@
+package org.walkmod.walkers;
+
+import java.lang.reflect.Method;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WriterDispatchPlanTest {
+
+	public static class SampleWriter {
+
+		public void write(Object o, VisitorContext vc) {
+		}
+
+		public void write(Number n) {
+		}
+
+		public void write(String s, VisitorContext vc) {
+		}
+	}
+
+	@Test
+	public void testMapsEachElementClassToItsOverloads() {
+		WriterDispatchPlan plan = WriterDispatchPlan.forWriter(SampleWriter.class);
+		Assert.assertSame(plan, WriterDispatchPlan.forWriter(SampleWriter.class));
+
+		DispatchTable.Target[] targets = plan.getWriteMethods(Integer.class);
+		Assert.assertEquals(2, targets.length);
+		for (DispatchTable.Target target : targets) {
+			Method m = target.getMethod();
+			Assert.assertTrue(m.getParameterTypes()[0].isAssignableFrom(Integer.class));
+		}
+		Assert.assertSame(targets, plan.getWriteMethods(Integer.class));
+		Assert.assertEquals(1, plan.getWriteMethods(Object.class).length);
+	}
+}
@@ -4,8 +4,11 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
 import org.junit.Assert;
 import org.junit.Test;
+import org.walkmod.walkers.AbstractWalker;
 import org.walkmod.walkers.VisitorContext;
 
 public class AbstractFileWriterTest {
@@ -66,4 +69,177 @@ public class AbstractFileWriterTest {
 		reader.close();
 		Assert.assertEquals('\r', buf[4]);
 	}
+
+	private String write(String content, char endLineChar, boolean append) throws IOException {
+		java.io.StringWriter out = new java.io.StringWriter();
+		if (append) {
+			writer.append(content, out, endLineChar);
+		} else {
+			writer.write(content, out, endLineChar);
+		}
+		return out.toString();
+	}
+
+	@Test
+	public void testConvertsTheLineEndings() throws IOException {
+		Assert.assertEquals("a\r\nb\r\n\r\nc", write("a\nb\r\n\rc", '\r', false));
+		Assert.assertEquals("a\nb\n\nc\n", write("a\r\nb\r\r\nc\r", '\n', false));
+		Assert.assertEquals("", write("", '\r', false));
+		Assert.assertEquals("a\r\nb\r\n", write("a\nb", '\r', true));
+		Assert.assertEquals("a\n\nb\n", write("a\r\n\rb\n", '\n', true));
+		Assert.assertEquals("", write("", '\n', true));
+
+		writer.setPlatform("mac");
+		try {
+			Assert.assertEquals("a\rb\r", write("a\r\nb\n", '\n', false));
+		} finally {
+			writer.setPlatform(null);
+		}
+	}
+
+	@Test
+	public void testSkipsTheUnchangedFiles() throws Exception {
+		AbstractFileWriter stringWriter = new StringWriter();
+		File file = File.createTempFile("test", "unchanged.txt");
+		FileWriter fw = new FileWriter(file);
+		fw.write("a\r\nb\r\n");
+		fw.close();
+		file.setLastModified(1000);
+		Summary.getInstance().clear();
+
+		VisitorContext vc = new VisitorContext();
+		vc.put(AbstractWalker.ORIGINAL_FILE_KEY, file);
+		stringWriter.write("a\nb\n", vc);
+		Assert.assertEquals(1000, file.lastModified());
+		Assert.assertEquals(1, Summary.getInstance().getSkippedFiles().size());
+		Assert.assertTrue(Summary.getInstance().getWrittenFiles().isEmpty());
+
+		stringWriter.write("a\nc\n", vc);
+		Assert.assertEquals(1, Summary.getInstance().getWrittenFiles().size());
+		Assert.assertEquals("a\r\nc\r\n", FileUtils.readFileToString(file));
+		Summary.getInstance().clear();
+		file.delete();
+	}
+
+	@Test
+	public void testWritesWithTheOverriddenWriter() throws Exception {
+		final java.io.StringWriter written = new java.io.StringWriter();
+		AbstractFileWriter overridden = new StringWriter() {
+
+			@Override
+			protected java.io.Writer getWriter(File out) {
+				return written;
+			}
+		};
+		File file = File.createTempFile("test", "overridden.txt");
+		FileWriter fw = new FileWriter(file);
+		fw.write("a\n");
+		fw.close();
+
+		VisitorContext vc = new VisitorContext();
+		vc.put(AbstractWalker.ORIGINAL_FILE_KEY, file);
+		overridden.write("b\n", vc);
+		Assert.assertEquals("b\n", written.toString());
+		Assert.assertEquals("a\n", FileUtils.readFileToString(file));
+		Summary.getInstance().clear();
+		file.delete();
+	}
+
+	@Test
+	public void testUsesTheDetectedEndLineChar() throws Exception {
+		File file = File.createTempFile("test", "detected.txt");
+		FileWriter fw = new FileWriter(file);
+		fw.write("a\nb\n");
+		fw.close();
+
+		VisitorContext vc = new VisitorContext();
+		vc.put(AbstractWalker.ORIGINAL_FILE_KEY, file);
+		vc.put(AbstractWalker.ORIGINAL_END_LINE_KEY, '\r');
+		Assert.assertEquals('\r', writer.getEndLineChar(file, vc));
+		Assert.assertEquals('\n', writer.getEndLineChar(file, new VisitorContext()));
+		file.delete();
+	}
+
+	private File createSources(int files) throws IOException {
+		File dir = File.createTempFile("test", "transaction");
+		dir.delete();
+		dir.mkdirs();
+		for (int i = 0; i < files; i++) {
+			FileUtils.writeStringToFile(new File(dir, "File" + i + ".java"), "original\n");
+		}
+		return dir;
+	}
+
+	@Test
+	public void testCommitsTheStagedFiles() throws Exception {
+		File dir = createSources(5);
+		StringWriter stringWriter = new StringWriter();
+		stringWriter.setTransactional(true);
+		stringWriter.setSyncBatchSize(2);
+		new File(dir, "File1.java").setExecutable(true);
+		VisitorContext vc = new VisitorContext();
+		for (int i = 0; i < 5; i++) {
+			vc.put(AbstractWalker.ORIGINAL_FILE_KEY, new File(dir, "File" + i + ".java"));
+			stringWriter.write("changed " + i + "\n", vc);
+		}
+		Assert.assertEquals(10, dir.listFiles().length);
+		Assert.assertEquals("original\n", FileUtils.readFileToString(new File(dir, "File0.java")));
+
+		stringWriter.flush();
+		Assert.assertEquals(5, dir.listFiles().length);
+		for (int i = 0; i < 5; i++) {
+			Assert.assertEquals("changed " + i + "\n", FileUtils.readFileToString(new File(dir, "File" + i + ".java")));
+		}
+		Assert.assertTrue(new File(dir, "File1.java").canExecute());
+		FileUtils.deleteDirectory(dir);
+		Summary.getInstance().clear();
+	}
+
+	@Test
+	public void testRecoversAnInterruptedTransaction() throws Exception {
+		File dir = createSources(2);
+		StringWriter stringWriter = new StringWriter();
+		stringWriter.setPath(dir.getPath());
+		stringWriter.setTransactional(true);
+
+		// killed while committing: File0 has been replaced, File1 has not
+		FileUtils.writeStringToFile(new File(dir, ".File0.java.walkmod-backup"), "original\n");
+		FileUtils.writeStringToFile(new File(dir, "File0.java"), "changed\n");
+		FileUtils.writeStringToFile(new File(dir, ".File1.java.123.walkmod-staged"), "changed\n");
+		stringWriter.recover();
+		Assert.assertEquals(2, dir.listFiles().length);
+		Assert.assertEquals("original\n", FileUtils.readFileToString(new File(dir, "File0.java")));
+		Assert.assertEquals("original\n", FileUtils.readFileToString(new File(dir, "File1.java")));
+
+		// killed while deleting the backups: all the files have been replaced
+		FileUtils.writeStringToFile(new File(dir, ".File0.java.walkmod-backup"), "original\n");
+		FileUtils.writeStringToFile(new File(dir, "File0.java"), "changed\n");
+		stringWriter.recover();
+		Assert.assertEquals(2, dir.listFiles().length);
+		Assert.assertEquals("changed\n", FileUtils.readFileToString(new File(dir, "File0.java")));
+		FileUtils.deleteDirectory(dir);
+	}
+
+	@Test
+	public void testRollsBackTheStagedFiles() throws Exception {
+		File dir = createSources(3);
+		StringWriter stringWriter = new StringWriter();
+		stringWriter.setTransactional(true);
+		Summary.getInstance().clear();
+		VisitorContext vc = new VisitorContext();
+		for (int i = 0; i < 3; i++) {
+			vc.put(AbstractWalker.ORIGINAL_FILE_KEY, new File(dir, "File" + i + ".java"));
+			stringWriter.write("changed " + i + "\n", vc);
+		}
+		Assert.assertEquals(3, Summary.getInstance().getWrittenFiles().size());
+
+		stringWriter.rollback();
+		stringWriter.flush();
+		Assert.assertEquals(3, dir.listFiles().length);
+		for (int i = 0; i < 3; i++) {
+			Assert.assertEquals("original\n", FileUtils.readFileToString(new File(dir, "File" + i + ".java")));
+		}
+		Assert.assertTrue(Summary.getInstance().getWrittenFiles().isEmpty());
+		FileUtils.deleteDirectory(dir);
+	}
 }
@@ -0,0 +1,135 @@
+package org.walkmod.writers;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.walkmod.ChainWriter;
+import org.walkmod.walkers.AbstractWalker;
+import org.walkmod.walkers.VisitorContext;
+
+public class AsyncChainWriterTest {
+
+	public static class RecordingWriter implements ChainWriter {
+
+		private final List<String> written = Collections.synchronizedList(new ArrayList<String>());
+
+		private int flushes = 0;
+
+		public void write(String n, VisitorContext vc) throws Exception {
+			if (n.startsWith("fail")) {
+				throw new IOException("disk full");
+			}
+			Thread.sleep(1);
+			if (n.startsWith("message")) {
+				vc.addTransformationMessage(n + " in " + vc.get("outDir"));
+			}
+			vc.put("outFile", n);
+			written.add(n);
+		}
+
+		@Override
+		public void write(Object n, VisitorContext vc) throws Exception {
+		}
+
+		@Override
+		public void close() throws IOException {
+		}
+
+		@Override
+		public void flush() throws IOException {
+			flushes++;
+		}
+
+		@Override
+		public String getPath() {
+			return null;
+		}
+
+		@Override
+		public void setPath(String path) {
+		}
+
+		@Override
+		public void setExcludes(String[] excludes) {
+		}
+
+		@Override
+		public String[] getExcludes() {
+			return null;
+		}
+
+		@Override
+		public void setIncludes(String[] includes) {
+		}
+
+		@Override
+		public String[] getIncludes() {
+			return null;
+		}
+	}
+
+	private VisitorContext context(String file) {
+		VisitorContext vc = new VisitorContext();
+		vc.put(AbstractWalker.ORIGINAL_FILE_KEY, new File(file));
+		return vc;
+	}
+
+	@Test
+	public void testWritesInTheBackgroundUntilClosed() throws Exception {
+		RecordingWriter recording = new RecordingWriter();
+		AsyncChainWriter writer = new AsyncChainWriter(recording, 2, 1);
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 20; i++) {
+			VisitorContext vc = context("File" + i + ".java");
+			writer.write("content" + i, vc);
+			Assert.assertFalse(vc.containsKey("outFile"));
+			expected.add("content" + i);
+		}
+		writer.close();
+		Assert.assertEquals(expected, recording.written);
+		Assert.assertEquals(1, recording.flushes);
+
+		// the threads are started again
+		writer.write("more", context("More.java"));
+		writer.flush();
+		Assert.assertEquals(21, recording.written.size());
+		writer.close();
+	}
+
+	@Test
+	public void testWritesWithASnapshotOfTheContext() throws Exception {
+		RecordingWriter recording = new RecordingWriter();
+		AsyncChainWriter writer = new AsyncChainWriter(recording, 4, 1);
+		VisitorContext vc = context("A.java");
+		vc.put("outDir", "src");
+		vc.addTransformationMessage("visited");
+		writer.write("message", vc);
+		vc.put("outDir", "changed");
+		vc.getVisitorMessages().clear();
+		writer.flush();
+		Assert.assertFalse(vc.containsKey("outFile"));
+		Assert.assertEquals(Collections.singletonList("message in src"), new ArrayList<String>(vc.getVisitorMessages()));
+		writer.close();
+	}
+
+	@Test
+	public void testReportsTheFileOfTheFailedWrites() throws Exception {
+		RecordingWriter recording = new RecordingWriter();
+		AsyncChainWriter writer = new AsyncChainWriter(recording, 4, 2);
+		writer.write("content", context("A.java"));
+		writer.write("fail", context("B.java"));
+		try {
+			writer.close();
+			Assert.fail("The failed write must be reported");
+		} catch (IOException e) {
+			Assert.assertTrue(e.getMessage().contains("B.java"));
+			Assert.assertEquals("disk full", e.getCause().getMessage());
+		}
+		Assert.assertEquals(1, recording.written.size());
+	}
+}
@@ -0,0 +1,48 @@
+package org.walkmod.writers;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.walkmod.util.MemoryFileSystem;
+import org.walkmod.walkers.AbstractWalker;
+import org.walkmod.walkers.VisitorContext;
+
+public class MemoryFileWriterTest {
+
+	@After
+	public void removeFileSystem() {
+		MemoryFileSystem.remove("test");
+	}
+
+	@Test
+	public void testWritesIntoTheFileSystem() throws Exception {
+		MemoryFileSystem fs = MemoryFileSystem.get("test");
+		fs.write("src/A.java", "class A {\r\n}\r\n");
+
+		MemoryFileWriter writer = new MemoryFileWriter();
+		writer.setFileSystem("test");
+		writer.setPath("src");
+		writer.setExcludes(new String[] { "generated" });
+
+		VisitorContext vc = new VisitorContext();
+		vc.put(AbstractWalker.ORIGINAL_FILE_KEY, new File("src/A.java"));
+		writer.write("class A {\n  int a;\n}\n", vc);
+		Assert.assertEquals("class A {\r\n  int a;\r\n}\r\n", fs.read("src/A.java"));
+
+		vc.put(AbstractWalker.ORIGINAL_FILE_KEY, new File("src/B.java").getAbsoluteFile());
+		writer.write("class B {\n}\n", vc);
+		Assert.assertEquals("class B {\n}\n", fs.read("src/B.java"));
+
+		Summary.getInstance().clear();
+		writer.write("class B {\n}\n", vc);
+		Assert.assertEquals(1, Summary.getInstance().getSkippedFiles().size());
+		Summary.getInstance().clear();
+
+		vc.put(AbstractWalker.ORIGINAL_FILE_KEY, new File("src/generated/C.java"));
+		writer.write("class C {\n}\n", vc);
+		Assert.assertFalse(fs.exists("src/generated/C.java"));
+		Assert.assertFalse(new File("src/B.java").exists());
+	}
+}